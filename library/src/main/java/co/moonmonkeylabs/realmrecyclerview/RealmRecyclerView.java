@@ -50,6 +50,7 @@ public class RealmRecyclerView extends FrameLayout {
     private RecyclerView recyclerView;
     private ViewStub emptyContentContainer;
     private RealmBasedRecyclerViewAdapter adapter;
+    private boolean isUpdatesPaused;
     private RealmSimpleItemTouchHelperCallback realmSimpleItemTouchHelperCallback;
     private boolean hasLoadMoreFired;
     private boolean showShowLoadMore;
@@ -335,6 +336,9 @@ public class RealmRecyclerView extends FrameLayout {
     public void setAdapter(final RealmBasedRecyclerViewAdapter adapter) {
         this.adapter = adapter;
         recyclerView.setAdapter(adapter);
+        if (adapter != null && isUpdatesPaused) {
+            adapter.pauseUpdates();
+        }
         setEmptyStubVisibility(null == adapter || adapter.isEmpty());
         if (swipeToDelete) {
             realmSimpleItemTouchHelperCallback.setAdapter(adapter);
@@ -404,6 +408,24 @@ public class RealmRecyclerView extends FrameLayout {
     public void scrollToPosition(int position) {
         recyclerView.scrollToPosition(position);
     }
+
+    /**
+     * Pauses the automatic updates of the adapter until {@link #resumeUpdates()}, e.g. during a
+     * bulk import, see {@link RealmBasedRecyclerViewAdapter#pauseUpdates()}.
+     */
+    public void pauseUpdates() {
+        isUpdatesPaused = true;
+        if (adapter != null) {
+            adapter.pauseUpdates();
+        }
+    }
+
+    public void resumeUpdates() {
+        isUpdatesPaused = false;
+        if (adapter != null) {
+            adapter.resumeUpdates();
+        }
+    }
     
     //
     // Expose public RecycleView
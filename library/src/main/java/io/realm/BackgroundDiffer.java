@@ -0,0 +1,218 @@
+package io.realm;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.realm.internal.OsSharedRealm;
+import io.realm.internal.Row;
+
+/**
+ * Calculates the {@link DiffUtil.DiffResult} between two collections on a background thread.
+ *
+ * Realm objects can't be read from another thread, so the rows are first reduced to their
+ * primary key and a hash of their content. Those are read directly from the rows, with the
+ * columns resolved once per collection, see {@link RowHasher}. Only the key arrays are handed to
+ * the worker, which runs the diff and posts the result back to the main thread. If the query of
+ * the new data is known, its keys are read on the worker as well, from its own {@link Realm}.
+ * Its result is then delivered with the version it was read at, so the caller can check that its
+ * own data is at the very same version. A newer request supersedes any pending one.
+ */
+class BackgroundDiffer {
+
+    interface Callback {
+        /**
+         * @param newDataVersion the version at which the keys of the new data were read on the
+         * worker, null if they were read on the calling thread.
+         */
+        void onDiffCalculated(
+                DiffUtil.DiffResult diffResult,
+                OsSharedRealm.VersionID newDataVersion);
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PrimaryKeyReader primaryKeyReader;
+    private final RowHasher rowHasher = new RowHasher();
+    private int generation;
+
+    BackgroundDiffer(PrimaryKeyReader primaryKeyReader) {
+        this.primaryKeyReader = primaryKeyReader;
+    }
+
+    /**
+     * Reads the keys of both collections and schedules the diff. The rows at the hidden indexes
+     * of the old data are left out, as they are not shown anymore.
+     *
+     * @param hiddenOldIndexes sorted indexes of the old data.
+     */
+    void diff(
+            OrderedRealmCollection<? extends RealmModel> oldData,
+            int[] hiddenOldIndexes,
+            int hiddenCount,
+            OrderedRealmCollection<? extends RealmModel> newData,
+            final Callback callback) {
+        final long[] oldIds = new long[oldData.size() - hiddenCount];
+        final long[] oldHashes = new long[oldIds.length];
+        readKeys(oldData, hiddenOldIndexes, hiddenCount, primaryKeyReader, rowHasher, oldIds, oldHashes);
+        final long[] newIds = new long[newData.size()];
+        final long[] newHashes = new long[newIds.length];
+        readKeys(newData, hiddenOldIndexes, 0, primaryKeyReader, rowHasher, newIds, newHashes);
+
+        final int requestGeneration = ++generation;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new KeyDiffCallback(oldIds, oldHashes, newIds, newHashes));
+                deliver(requestGeneration, diffResult, null, callback);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #diff(OrderedRealmCollection, int[], int, OrderedRealmCollection, Callback)},
+     * but the new data is queried again and its keys are read on the worker.
+     */
+    void diff(
+            OrderedRealmCollection<? extends RealmModel> oldData,
+            int[] hiddenOldIndexes,
+            int hiddenCount,
+            final RealmConfiguration configuration,
+            final RealmBasedRecyclerViewAdapter.RealmQueryProvider<?> newDataQuery,
+            final Callback callback) {
+        final long[] oldIds = new long[oldData.size() - hiddenCount];
+        final long[] oldHashes = new long[oldIds.length];
+        readKeys(oldData, hiddenOldIndexes, hiddenCount, primaryKeyReader, rowHasher, oldIds, oldHashes);
+
+        final int requestGeneration = ++generation;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation) {
+                    // Superseded already, skips the query.
+                    return;
+                }
+                long[] newIds;
+                long[] newHashes;
+                OsSharedRealm.VersionID versionID;
+                Realm realm = Realm.getInstance(configuration);
+                try {
+                    RealmResults<?> results = newDataQuery.getResults(realm);
+                    newIds = new long[results.size()];
+                    newHashes = new long[newIds.length];
+                    readKeys(results, new int[0], 0,
+                            new PrimaryKeyReader(), new RowHasher(), newIds, newHashes);
+                    versionID = realm.sharedRealm.getVersionID();
+                } finally {
+                    realm.close();
+                }
+                DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new KeyDiffCallback(oldIds, oldHashes, newIds, newHashes));
+                deliver(requestGeneration, diffResult, versionID, callback);
+            }
+        });
+    }
+
+    /**
+     * Drops the result of the pending diff, if any.
+     */
+    void cancel() {
+        generation++;
+    }
+
+    private void deliver(
+            final int requestGeneration,
+            final DiffUtil.DiffResult diffResult,
+            final OsSharedRealm.VersionID newDataVersion,
+            final Callback callback) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration == generation) {
+                    callback.onDiffCalculated(diffResult, newDataVersion);
+                }
+            }
+        });
+    }
+
+    private static void readKeys(
+            OrderedRealmCollection<? extends RealmModel> data,
+            int[] hiddenIndexes,
+            int hiddenCount,
+            PrimaryKeyReader keyReader,
+            RowHasher hasher,
+            long[] ids,
+            long[] hashes) {
+        if (ids.length == 0) {
+            return;
+        }
+        BaseRealm realm = getRealm(data);
+        hasher.reset();
+        int hidden = 0;
+        int index = 0;
+        for (int i = 0; i < ids.length; i++, index++) {
+            while (hidden < hiddenCount && hiddenIndexes[hidden] == index) {
+                hidden++;
+                index++;
+            }
+            Row row = ColumnAccessor.rowAt(data, index);
+            if (!row.isValid()) {
+                // Deleted from a snapshot, gets an id that matches no other row.
+                ids[i] = Long.MIN_VALUE + i;
+                continue;
+            }
+            ids[i] = keyReader.readId(row, realm);
+            hashes[i] = hasher.hash(row);
+        }
+    }
+
+    private static BaseRealm getRealm(OrderedRealmCollection<? extends RealmModel> data) {
+        if (data instanceof OrderedRealmCollectionImpl) {
+            return ((OrderedRealmCollectionImpl) data).realm;
+        } else if (data instanceof RealmList) {
+            return ((RealmList) data).realm;
+        }
+        throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
+    }
+
+    private static class KeyDiffCallback extends DiffUtil.Callback {
+
+        private final long[] oldIds;
+        private final long[] oldHashes;
+        private final long[] newIds;
+        private final long[] newHashes;
+
+        KeyDiffCallback(long[] oldIds, long[] oldHashes, long[] newIds, long[] newHashes) {
+            this.oldIds = oldIds;
+            this.oldHashes = oldHashes;
+            this.newIds = newIds;
+            this.newHashes = newHashes;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldIds[oldItemPosition] == newIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldHashes[oldItemPosition] == newHashes[newItemPosition];
+        }
+    }
+}
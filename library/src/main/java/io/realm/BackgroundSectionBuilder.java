@@ -0,0 +1,114 @@
+package io.realm;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import io.realm.internal.OsSharedRealm;
+
+/**
+ * Builds the {@link SectionedRowMap} of a {@link RealmBasedRecyclerViewAdapter} on a worker
+ * thread.
+ *
+ * Realm objects can't be handed over between threads, so the worker opens its own {@link Realm}
+ * with the configuration of the adapter's data and runs the query again through the
+ * {@link RealmBasedRecyclerViewAdapter.RealmQueryProvider}. The result is delivered on the main
+ * thread together with the version it was computed for, which lets the adapter only swap it in if
+ * its own data is at the very same version.
+ *
+ * Only the latest request is built, pending ones are dropped when a new one is posted.
+ */
+class BackgroundSectionBuilder<T extends RealmModel> {
+
+    interface Callback {
+        void onSectionsBuilt(SectionedRowMap rowMap, OsSharedRealm.VersionID versionID);
+    }
+
+    private final RealmBasedRecyclerViewAdapter<T, ?> adapter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private WorkerThread workerThread;
+    private Handler workerHandler;
+
+    private static class WorkerThread extends HandlerThread {
+
+        // Only accessed from the thread itself
+        Realm realm;
+
+        WorkerThread() {
+            super("RealmSectionBuilder");
+        }
+    }
+
+    BackgroundSectionBuilder(RealmBasedRecyclerViewAdapter<T, ?> adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * Schedules a build of the sections for the latest version of the realm.
+     */
+    void build(
+            final RealmConfiguration configuration,
+            final RealmBasedRecyclerViewAdapter.RealmQueryProvider<T> queryProvider,
+            final boolean sorted,
+            final Callback callback) {
+        if (workerThread == null) {
+            workerThread = new WorkerThread();
+            workerThread.start();
+            workerHandler = new Handler(workerThread.getLooper());
+        }
+        final WorkerThread thread = workerThread;
+        workerHandler.removeCallbacksAndMessages(null);
+        mainHandler.removeCallbacksAndMessages(null);
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (thread.realm == null) {
+                    thread.realm = Realm.getInstance(configuration);
+                }
+                thread.realm.refresh();
+
+                final RealmResults<T> results = queryProvider.getResults(thread.realm);
+                final SectionedRowMap rowMap = adapter.createRowMap();
+                SectionedRowMap.HeaderReader reader = adapter.createHeaderReader(results);
+                if (sorted) {
+                    rowMap.rebuildSorted(results.size(), reader);
+                } else {
+                    rowMap.rebuild(results.size(), reader);
+                }
+                final OsSharedRealm.VersionID versionID = thread.realm.sharedRealm.getVersionID();
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSectionsBuilt(rowMap, versionID);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops any pending build and stops the worker thread after closing its realm.
+     */
+    void quit() {
+        mainHandler.removeCallbacksAndMessages(null);
+        if (workerThread == null) {
+            return;
+        }
+        final WorkerThread thread = workerThread;
+        workerHandler.removeCallbacksAndMessages(null);
+        workerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (thread.realm != null) {
+                    thread.realm.close();
+                    thread.realm = null;
+                }
+            }
+        });
+        workerThread.quitSafely();
+        workerThread = null;
+        workerHandler = null;
+    }
+}
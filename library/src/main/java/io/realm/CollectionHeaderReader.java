@@ -0,0 +1,107 @@
+package io.realm;
+
+import io.realm.internal.Row;
+
+/**
+ * Reads the section headers of a collection for the {@link SectionedRowMap}. The header column
+ * is resolved once for the collection, see {@link ColumnAccessor}.
+ *
+ * The headers are created by the {@link SectionKeyExtractor} of the adapter or, if none is set
+ * and {@link RealmBasedRecyclerViewAdapter#createHeaderFromColumnValue(Object)} isn't overridden,
+ * by the default extractor of the column type. Rows are then compared by their raw section key
+ * and a row with the same key as the previous one gets the previous label back, without a lookup
+ * or allocation. Only an overridden createHeaderFromColumnValue is called for every row.
+ *
+ * An instance is confined to the thread of its collection.
+ */
+class CollectionHeaderReader implements SectionedRowMap.HeaderReader {
+
+    private final RealmBasedRecyclerViewAdapter<?, ?> adapter;
+    private final OrderedRealmCollection<? extends RealmModel> collection;
+    private final String columnName;
+    private SectionKeyExtractor keyExtractor;
+    private ColumnAccessor columnAccessor;
+    private long columnIndex = -1;
+    private RealmFieldType columnType;
+
+    private long lastKey;
+    private String lastLabel;
+    private int lastLabelGeneration;
+
+    private ColumnAccessor valueAccessor;
+
+    private final CollectionHeaderReader parentReader;
+
+    /**
+     * @param parentReader reads the parent headers of nested sections, may be null.
+     */
+    CollectionHeaderReader(
+            RealmBasedRecyclerViewAdapter<?, ?> adapter,
+            OrderedRealmCollection<? extends RealmModel> collection,
+            String columnName,
+            SectionKeyExtractor keyExtractor,
+            CollectionHeaderReader parentReader) {
+        this.adapter = adapter;
+        this.collection = collection;
+        this.columnName = columnName;
+        this.keyExtractor = keyExtractor;
+        this.parentReader = parentReader;
+    }
+
+    @Override
+    public String readHeader(int realmIndex) {
+        Row row = ColumnAccessor.rowAt(collection, realmIndex);
+        if (columnIndex == -1) {
+            resolveColumn(row);
+        }
+        if (keyExtractor == null) {
+            return adapter.createHeaderFromColumnValue(columnAccessor.get(row));
+        }
+        if (row.isNull(columnIndex)) {
+            return keyExtractor.getNullLabel();
+        }
+        long key = keyExtractor.readKey(row, columnIndex, columnType);
+        int labelGeneration = keyExtractor.getLabelGeneration();
+        if (lastLabel == null || key != lastKey || labelGeneration != lastLabelGeneration) {
+            // The label is read again after SectionKeyExtractor#clearLabels().
+            lastLabel = keyExtractor.getLabel(key);
+            lastKey = key;
+            lastLabelGeneration = labelGeneration;
+        }
+        return lastLabel;
+    }
+
+    @Override
+    public String readParentHeader(int realmIndex) {
+        return parentReader == null ? null : parentReader.readHeader(realmIndex);
+    }
+
+    /**
+     * Reads the value of the aggregate column of the adapter, null counts as 0.
+     */
+    @Override
+    public double readValue(int realmIndex) {
+        Row row = ColumnAccessor.rowAt(collection, realmIndex);
+        if (valueAccessor == null) {
+            valueAccessor = ColumnAccessor.forNumericColumn(
+                    row, adapter.getSectionAggregateColumnName());
+        }
+        return valueAccessor.isNull(row) ? 0 : valueAccessor.getDouble(row);
+    }
+
+    private void resolveColumn(Row row) {
+        long index = row.getColumnIndex(columnName);
+        RealmFieldType type = row.getColumnType(index);
+        if (keyExtractor == null) {
+            keyExtractor = adapter.getDefaultKeyExtractor(type);
+        }
+        if (keyExtractor == null) {
+            columnAccessor = ColumnAccessor.forColumn(row, columnName);
+        } else if (!keyExtractor.supports(type)) {
+            throw new IllegalStateException(
+                    "columnValue type not supported by " + keyExtractor.getClass().getName());
+        }
+        columnType = type;
+        columnIndex = index;
+    }
+}
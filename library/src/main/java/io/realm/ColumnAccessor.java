@@ -0,0 +1,173 @@
+package io.realm;
+
+import io.realm.internal.Row;
+
+/**
+ * Reads the value of one column from rows of the same table.
+ *
+ * The column index and type are resolved once from the first row, the returned accessor is
+ * specialized for the column type so that reading a row neither looks up the column by name nor
+ * checks its type again. An accessor is only valid for the schema it was resolved for and must
+ * be created again for a new collection.
+ *
+ * Use the typed reads where the type of the column is known, {@link #get(Row)} boxes the value
+ * and is only meant for APIs that take an Object, e.g.
+ * {@link RealmBasedRecyclerViewAdapter#createHeaderFromColumnValue(Object)}.
+ */
+abstract class ColumnAccessor {
+
+    final long columnIndex;
+
+    ColumnAccessor(long columnIndex) {
+        this.columnIndex = columnIndex;
+    }
+
+    /**
+     * Resolves the column by name on the given row.
+     *
+     * @throws IllegalStateException if the column type is not supported.
+     */
+    static ColumnAccessor forColumn(Row row, String columnName) {
+        long columnIndex = row.getColumnIndex(columnName);
+        RealmFieldType fieldType = row.getColumnType(columnIndex);
+        if (fieldType == RealmFieldType.STRING) {
+            return new StringAccessor(columnIndex);
+        } else if (fieldType == RealmFieldType.INTEGER) {
+            return new LongAccessor(columnIndex);
+        }
+        throw new IllegalStateException("columnValue type not supported");
+    }
+
+    /**
+     * Resolves a numeric column by name on the given row, whose values are read with
+     * {@link #getDouble(Row)}.
+     *
+     * @throws IllegalStateException if the column type is not supported.
+     */
+    static ColumnAccessor forNumericColumn(Row row, String columnName) {
+        long columnIndex = row.getColumnIndex(columnName);
+        RealmFieldType fieldType = row.getColumnType(columnIndex);
+        if (fieldType == RealmFieldType.INTEGER) {
+            return new LongAccessor(columnIndex);
+        } else if (fieldType == RealmFieldType.FLOAT) {
+            return new FloatAccessor(columnIndex);
+        } else if (fieldType == RealmFieldType.DOUBLE) {
+            return new DoubleAccessor(columnIndex);
+        }
+        throw new IllegalStateException("Aggregate column type not supported: " + fieldType);
+    }
+
+    /**
+     * @return the row at the index of the collection, without creating a proxy object for
+     * results and snapshots.
+     */
+    static Row rowAt(OrderedRealmCollection<? extends RealmModel> collection, int index) {
+        if (collection instanceof OrderedRealmCollectionImpl) {
+            return ((OrderedRealmCollectionImpl) collection).osResults.getUncheckedRow(index);
+        }
+        return PrimaryKeyReader.getRow(collection.get(index));
+    }
+
+    boolean isNull(Row row) {
+        return row.isNull(columnIndex);
+    }
+
+    /**
+     * @return the boxed value of the column.
+     */
+    abstract Object get(Row row);
+
+    /**
+     * @throws IllegalStateException if the column is not a string column.
+     */
+    String getString(Row row) {
+        throw new IllegalStateException("Not a string column: " + columnIndex);
+    }
+
+    /**
+     * @throws IllegalStateException if the column is not an integer column.
+     */
+    long getLong(Row row) {
+        throw new IllegalStateException("Not an integer column: " + columnIndex);
+    }
+
+    /**
+     * @throws IllegalStateException if the column is not a numeric column.
+     */
+    double getDouble(Row row) {
+        throw new IllegalStateException("Not a numeric column: " + columnIndex);
+    }
+
+    private static class StringAccessor extends ColumnAccessor {
+
+        StringAccessor(long columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        Object get(Row row) {
+            return row.getString(columnIndex);
+        }
+
+        @Override
+        String getString(Row row) {
+            return row.getString(columnIndex);
+        }
+    }
+
+    private static class LongAccessor extends ColumnAccessor {
+
+        LongAccessor(long columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        Object get(Row row) {
+            return row.getLong(columnIndex);
+        }
+
+        @Override
+        long getLong(Row row) {
+            return row.getLong(columnIndex);
+        }
+
+        @Override
+        double getDouble(Row row) {
+            return row.getLong(columnIndex);
+        }
+    }
+
+    private static class FloatAccessor extends ColumnAccessor {
+
+        FloatAccessor(long columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        Object get(Row row) {
+            return row.getFloat(columnIndex);
+        }
+
+        @Override
+        double getDouble(Row row) {
+            return row.getFloat(columnIndex);
+        }
+    }
+
+    private static class DoubleAccessor extends ColumnAccessor {
+
+        DoubleAccessor(long columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        Object get(Row row) {
+            return row.getDouble(columnIndex);
+        }
+
+        @Override
+        double getDouble(Row row) {
+            return row.getDouble(columnIndex);
+        }
+    }
+}
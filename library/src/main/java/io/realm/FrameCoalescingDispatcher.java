@@ -0,0 +1,141 @@
+package io.realm;
+
+import android.view.Choreographer;
+
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.Arrays;
+
+/**
+ * Collects the updates of all change sets that arrive within one frame and dispatches them at the
+ * beginning of the next frame, before the layout pass.
+ *
+ * The updates are replayed in order through a {@link BatchingListUpdateCallback}, which merges
+ * consecutive updates of the same kind into a single range. The adapter is told about the
+ * upcoming dispatch first so that it can swap in the state matching the updates.
+ */
+class FrameCoalescingDispatcher implements ListUpdateCallback, Choreographer.FrameCallback {
+
+    private static final int TYPE_INSERTED = 0;
+    private static final int TYPE_REMOVED = 1;
+    private static final int TYPE_CHANGED = 2;
+    // The position is the from position and the count the to position
+    private static final int TYPE_MOVED = 3;
+
+    private final BatchingListUpdateCallback target;
+    private final Runnable beforeDispatch;
+
+    private int[] types = new int[16];
+    private int[] positions = new int[16];
+    private int[] counts = new int[16];
+    private Object[] payloads = new Object[16];
+    private int size;
+    private boolean scheduled;
+
+    FrameCoalescingDispatcher(ListUpdateCallback target, Runnable beforeDispatch) {
+        this.target = new BatchingListUpdateCallback(target);
+        this.beforeDispatch = beforeDispatch;
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        add(TYPE_INSERTED, position, count, null);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        add(TYPE_REMOVED, position, count, null);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        // Moves detected by the MoveDetector, kept so that the view of the row is reused.
+        add(TYPE_MOVED, fromPosition, toPosition, null);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        add(TYPE_CHANGED, position, count, payload);
+    }
+
+    /**
+     * Requests a dispatch on the next frame, does nothing if one is already pending.
+     */
+    void schedule() {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Drops the pending updates without dispatching them.
+     */
+    void cancel() {
+        if (scheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            scheduled = false;
+        }
+        clear();
+    }
+
+    /**
+     * Dispatches the pending updates right away instead of on the next frame.
+     */
+    void flush() {
+        if (scheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            doFrame(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        beforeDispatch.run();
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case TYPE_INSERTED:
+                    target.onInserted(positions[i], counts[i]);
+                    break;
+                case TYPE_REMOVED:
+                    target.onRemoved(positions[i], counts[i]);
+                    break;
+                case TYPE_MOVED:
+                    target.onMoved(positions[i], counts[i]);
+                    break;
+                default:
+                    target.onChanged(positions[i], counts[i], payloads[i]);
+                    break;
+            }
+        }
+        target.dispatchLastEvent();
+        clear();
+    }
+
+    private void add(int type, int position, int count, Object payload) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+        }
+        types[size] = type;
+        positions[size] = position;
+        counts[size] = count;
+        payloads[size] = payload;
+        size++;
+    }
+
+    private void clear() {
+        Arrays.fill(payloads, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,177 @@
+package io.realm;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.Arrays;
+
+/**
+ * The rows of a collection that are hidden from the adapter, e.g. swiped rows whose deletion is
+ * still pending. Positions skip the hidden rows.
+ *
+ * Used as a {@link ListUpdateCallback}, the changes of the collection are translated from its
+ * indexes to positions before they are passed on, and the hidden rows are remapped along the
+ * way. Removals of hidden rows and their changes and moves are not passed on, the rows already
+ * were removed from the positions when they were hidden.
+ */
+class HiddenRows implements ListUpdateCallback {
+
+    // Sorted indexes of the hidden rows
+    private int[] indexes = new int[4];
+    private int count;
+    // Incremented whenever the hidden rows change
+    private int modCount;
+    private ListUpdateCallback target;
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sorted indexes of the hidden rows, only the first {@link #getCount()} are used.
+     */
+    int[] getIndexes() {
+        return indexes;
+    }
+
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * @return this callback, passing the translated changes on to the target.
+     */
+    ListUpdateCallback translateTo(ListUpdateCallback target) {
+        this.target = target;
+        return this;
+    }
+
+    /**
+     * @return the index of the row at the position.
+     */
+    int toIndex(int position) {
+        int index = position;
+        for (int i = 0; i < count && indexes[i] <= index; i++) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return the position of the row at the index, or of the next shown row if it is hidden.
+     */
+    int toPosition(int index) {
+        return index - countBefore(index);
+    }
+
+    boolean isHidden(int index) {
+        return Arrays.binarySearch(indexes, 0, count, index) >= 0;
+    }
+
+    void hide(int index) {
+        if (count == indexes.length) {
+            indexes = Arrays.copyOf(indexes, count * 2);
+        }
+        int i = count;
+        while (i > 0 && indexes[i - 1] > index) {
+            indexes[i] = indexes[i - 1];
+            i--;
+        }
+        indexes[i] = index;
+        count++;
+        modCount++;
+    }
+
+    /**
+     * @return the position of the row shown again.
+     */
+    int show(int index) {
+        int i = Arrays.binarySearch(indexes, 0, count, index);
+        System.arraycopy(indexes, i + 1, indexes, i, count - i - 1);
+        count--;
+        modCount++;
+        return index - i;
+    }
+
+    void clear() {
+        if (count > 0) {
+            count = 0;
+            modCount++;
+        }
+    }
+
+    @Override
+    public void onInserted(int index, int length) {
+        int first = countBefore(index);
+        shift(first, length);
+        target.onInserted(index - first, length);
+    }
+
+    @Override
+    public void onRemoved(int index, int length) {
+        int first = countBefore(index);
+        int end = countBefore(index + length);
+        if (end > first) {
+            // The deletion of hidden rows
+            System.arraycopy(indexes, end, indexes, first, count - end);
+            count -= end - first;
+            modCount++;
+        }
+        shift(first, -length);
+        int shownLength = length - (end - first);
+        if (shownLength > 0) {
+            target.onRemoved(index - first, shownLength);
+        }
+    }
+
+    @Override
+    public void onMoved(int fromIndex, int toIndex) {
+        int hidden = Arrays.binarySearch(indexes, 0, count, fromIndex);
+        if (hidden >= 0) {
+            System.arraycopy(indexes, hidden + 1, indexes, hidden, count - hidden - 1);
+            count--;
+            shift(hidden, -1);
+            shift(countBefore(toIndex), 1);
+            hide(toIndex);
+            return;
+        }
+        int fromPosition = fromIndex - countBefore(fromIndex);
+        shift(countBefore(fromIndex), -1);
+        int first = countBefore(toIndex);
+        shift(first, 1);
+        target.onMoved(fromPosition, toIndex - first);
+    }
+
+    @Override
+    public void onChanged(int index, int length, Object payload) {
+        int end = index + length;
+        int i = countBefore(index);
+        int start = index;
+        while (start < end) {
+            int runEnd = i < count ? Math.min(indexes[i], end) : end;
+            if (runEnd > start) {
+                target.onChanged(start - i, runEnd - start, payload);
+            }
+            // Skips the hidden row
+            start = runEnd + 1;
+            i++;
+        }
+    }
+
+    /**
+     * @return the number of hidden rows before the index.
+     */
+    private int countBefore(int index) {
+        int i = Arrays.binarySearch(indexes, 0, count, index);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void shift(int from, int delta) {
+        if (from >= count || delta == 0) {
+            return;
+        }
+        for (int i = from; i < count; i++) {
+            indexes[i] += delta;
+        }
+        modCount++;
+    }
+}
@@ -0,0 +1,220 @@
+package io.realm;
+
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Detects rows that moved within sorted results. Realm reports a move as a deletion and an
+ * insertion, this pairs them up by primary key so that they can be dispatched as moves and the
+ * view of the row is kept.
+ *
+ * The dispatch works in two passes. The removed rows are removed and the moved rows are moved to
+ * the end of the list, which leaves the unchanged rows in order. Then the new indexes are walked
+ * in ascending order and each inserted row is inserted and each moved row is moved to its new
+ * position. Positions of the moved rows are tracked along the way, which is quadratic in the
+ * number of moves, so the number of moves is capped.
+ */
+class MoveDetector {
+
+    static final int MAX_MOVES = 128;
+
+    private final PrimaryKeyReader primaryKeyReader;
+    private final HashMap<Object, Integer> deletedKeys = new HashMap<>();
+
+    // Moved rows, indexed in order of their old index
+    private int[] oldIndexes = new int[16];
+    private int[] newIndexes = new int[16];
+    private int[] positions = new int[16];
+    private int moveCount;
+
+    MoveDetector(PrimaryKeyReader primaryKeyReader) {
+        this.primaryKeyReader = primaryKeyReader;
+    }
+
+    /**
+     * Dispatches the changeSet with the detected moves to the callback.
+     *
+     * @param previous a snapshot of the collection before the changeSet.
+     * @param current the collection after the changeSet.
+     * @return false if no moves were found or there are too many, nothing is dispatched then.
+     */
+    boolean dispatch(
+            OrderedCollectionChangeSet changeSet,
+            OrderedRealmCollection<? extends RealmModel> previous,
+            OrderedRealmCollection<? extends RealmModel> current,
+            Object changePayload,
+            ListUpdateCallback callback) {
+        try {
+            if (!findMoves(changeSet, previous, current)) {
+                return false;
+            }
+            dispatchMoves(changeSet, previous.size(), changePayload, callback);
+            return true;
+        } finally {
+            deletedKeys.clear();
+            moveCount = 0;
+        }
+    }
+
+    private boolean findMoves(
+            OrderedCollectionChangeSet changeSet,
+            OrderedRealmCollection<? extends RealmModel> previous,
+            OrderedRealmCollection<? extends RealmModel> current) {
+        int[] deletions = changeSet.getDeletions();
+        int[] insertions = changeSet.getInsertions();
+        if (deletions.length == 0 || insertions.length == 0) {
+            return false;
+        }
+
+        // Objects that are still valid were only removed from the results.
+        for (int oldIndex : deletions) {
+            RealmModel object = previous.get(oldIndex);
+            if (RealmObject.isValid(object)) {
+                deletedKeys.put(primaryKeyReader.readKey(object), oldIndex);
+            }
+        }
+        if (deletedKeys.isEmpty()) {
+            return false;
+        }
+
+        for (int newIndex : insertions) {
+            Integer oldIndex = deletedKeys.get(primaryKeyReader.readKey(current.get(newIndex)));
+            if (oldIndex == null) {
+                continue;
+            }
+            if (moveCount == MAX_MOVES) {
+                return false;
+            }
+            addMove(oldIndex, newIndex);
+        }
+        if (moveCount == 0) {
+            return false;
+        }
+        sortMovesByOldIndex();
+        return true;
+    }
+
+    private void dispatchMoves(
+            OrderedCollectionChangeSet changeSet,
+            int size,
+            Object changePayload,
+            ListUpdateCallback callback) {
+        BatchingListUpdateCallback batching = new BatchingListUpdateCallback(callback);
+        for (int i = 0; i < moveCount; i++) {
+            positions[i] = oldIndexes[i];
+        }
+
+        // Removes the deleted rows in reverse order, the moved rows stay for now.
+        int[] deletions = changeSet.getDeletions();
+        int move = moveCount - 1;
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            int oldIndex = deletions[i];
+            if (move >= 0 && oldIndexes[move] == oldIndex) {
+                move--;
+                continue;
+            }
+            batching.onRemoved(oldIndex, 1);
+            trackRemoval(oldIndex);
+            size--;
+        }
+
+        // Parks the moved rows at the end.
+        for (int i = moveCount - 1; i >= 0; i--) {
+            if (positions[i] != size - 1) {
+                batching.onMoved(positions[i], size - 1);
+                trackMove(i, size - 1);
+            }
+        }
+
+        // Places the inserted and moved rows in ascending order of their new index.
+        int[] insertions = changeSet.getInsertions();
+        for (int newIndex : insertions) {
+            int moved = findMoveByNewIndex(newIndex);
+            if (moved == -1) {
+                batching.onInserted(newIndex, 1);
+                trackInsertion(newIndex);
+                size++;
+            } else if (positions[moved] != newIndex) {
+                batching.onMoved(positions[moved], newIndex);
+                trackMove(moved, newIndex);
+            }
+        }
+
+        // Moved rows are rebound in place as their sort key changed.
+        for (int i = 0; i < moveCount; i++) {
+            batching.onChanged(newIndexes[i], 1, RealmBasedRecyclerViewAdapter.PAYLOAD_ROW_CHANGED);
+        }
+        for (OrderedCollectionChangeSet.Range range : changeSet.getChangeRanges()) {
+            batching.onChanged(range.startIndex, range.length, changePayload);
+        }
+        batching.dispatchLastEvent();
+    }
+
+    private void addMove(int oldIndex, int newIndex) {
+        if (moveCount == oldIndexes.length) {
+            int capacity = moveCount * 2;
+            oldIndexes = Arrays.copyOf(oldIndexes, capacity);
+            newIndexes = Arrays.copyOf(newIndexes, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        oldIndexes[moveCount] = oldIndex;
+        newIndexes[moveCount] = newIndex;
+        moveCount++;
+    }
+
+    private void sortMovesByOldIndex() {
+        // Insertion sort, the number of moves is small.
+        for (int i = 1; i < moveCount; i++) {
+            int oldIndex = oldIndexes[i];
+            int newIndex = newIndexes[i];
+            int j = i - 1;
+            while (j >= 0 && oldIndexes[j] > oldIndex) {
+                oldIndexes[j + 1] = oldIndexes[j];
+                newIndexes[j + 1] = newIndexes[j];
+                j--;
+            }
+            oldIndexes[j + 1] = oldIndex;
+            newIndexes[j + 1] = newIndex;
+        }
+    }
+
+    private int findMoveByNewIndex(int newIndex) {
+        for (int i = 0; i < moveCount; i++) {
+            if (newIndexes[i] == newIndex) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void trackRemoval(int position) {
+        for (int i = 0; i < moveCount; i++) {
+            if (positions[i] > position) {
+                positions[i]--;
+            }
+        }
+    }
+
+    private void trackInsertion(int position) {
+        for (int i = 0; i < moveCount; i++) {
+            if (positions[i] >= position) {
+                positions[i]++;
+            }
+        }
+    }
+
+    private void trackMove(int moved, int to) {
+        int from = positions[moved];
+        for (int i = 0; i < moveCount; i++) {
+            if (from < to && positions[i] > from && positions[i] <= to) {
+                positions[i]--;
+            } else if (from > to && positions[i] >= to && positions[i] < from) {
+                positions[i]++;
+            }
+        }
+        positions[moved] = to;
+    }
+}
@@ -0,0 +1,125 @@
+package io.realm;
+
+import io.realm.internal.RealmObjectProxy;
+import io.realm.internal.Row;
+
+/**
+ * Reads the primary key of managed objects directly from their {@link Row}.
+ *
+ * The primary key column is resolved once from the schema of the first object read and reused
+ * for all following objects, call {@link #reset()} when the collection changes. Keys of type
+ * {@link RealmFieldType#INTEGER} and {@link RealmFieldType#STRING} are supported.
+ */
+class PrimaryKeyReader {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long columnIndex = -1;
+    private RealmFieldType columnType;
+    private String fieldName;
+
+    void reset() {
+        columnIndex = -1;
+        columnType = null;
+        fieldName = null;
+    }
+
+    /**
+     * @return the name of the primary key field.
+     */
+    String getFieldName(RealmModel model) {
+        resolve(getRow(model), getRealm(model));
+        return fieldName;
+    }
+
+    /**
+     * @return the primary key as a long. String keys are hashed to 64 bits.
+     */
+    long readId(RealmModel model) {
+        return readId(getRow(model), getRealm(model));
+    }
+
+    /**
+     * Like {@link #readId(RealmModel)}, but reads the row directly without a proxy object.
+     */
+    long readId(Row row, BaseRealm realm) {
+        resolve(row, realm);
+        if (columnType == RealmFieldType.INTEGER) {
+            return row.getLong(columnIndex);
+        }
+        return hash(row.getString(columnIndex));
+    }
+
+    /**
+     * @return the primary key as a {@link Long} or {@link String}.
+     */
+    Object readKey(RealmModel model) {
+        Row row = getRow(model);
+        resolve(row, getRealm(model));
+        if (row.isNull(columnIndex)) {
+            return null;
+        }
+        if (columnType == RealmFieldType.INTEGER) {
+            return row.getLong(columnIndex);
+        }
+        return row.getString(columnIndex);
+    }
+
+    private void resolve(Row row, BaseRealm realm) {
+        if (columnIndex != -1) {
+            return;
+        }
+        String className = row.getTable().getClassName();
+        RealmObjectSchema schema = realm.getSchema().get(className);
+        if (schema == null || !schema.hasPrimaryKey()) {
+            throw new IllegalStateException("A primary key is required for " + className);
+        }
+        String primaryKey = schema.getPrimaryKey();
+        long index = row.getColumnIndex(primaryKey);
+        RealmFieldType type = row.getColumnType(index);
+        if (type != RealmFieldType.INTEGER && type != RealmFieldType.STRING) {
+            throw new IllegalStateException("Primary key type not supported: " + type);
+        }
+        fieldName = primaryKey;
+        columnType = type;
+        columnIndex = index;
+    }
+
+    /**
+     * @return false if the object has no primary key of a supported type, which the other
+     * methods require.
+     */
+    static boolean hasSupportedPrimaryKey(RealmModel model) {
+        String className = getRow(model).getTable().getClassName();
+        RealmObjectSchema schema = getRealm(model).getSchema().get(className);
+        if (schema == null || !schema.hasPrimaryKey()) {
+            return false;
+        }
+        RealmFieldType type = schema.getFieldType(schema.getPrimaryKey());
+        return type == RealmFieldType.INTEGER || type == RealmFieldType.STRING;
+    }
+
+    static Row getRow(RealmModel model) {
+        return ((RealmObjectProxy) model).realmGet$proxyState().getRow$realm();
+    }
+
+    static BaseRealm getRealm(RealmModel model) {
+        return ((RealmObjectProxy) model).realmGet$proxyState().getRealm$realm();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the characters of a string.
+     */
+    static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,119 @@
+package io.realm;
+
+import java.util.Arrays;
+
+/**
+ * Caches the proxy objects of the rows around the visible window of a collection, so that
+ * rebinding a row that was recently bound doesn't create a new proxy.
+ *
+ * The cache is direct mapped by realm index into a power of two number of slots. Any contiguous
+ * window of rows up to that size is cached without evictions, rows outside of it replace the row
+ * in their slot. Proxies are live accessors of their object, so changed rows stay valid. Only
+ * deletions and insertions move rows, the cached indexes are remapped for those.
+ *
+ * The cache belongs to a single collection instance and is cleared when it is read from another
+ * one, e.g. a new snapshot.
+ */
+class ProxyWindowCache<T extends RealmModel> {
+
+    private final int mask;
+    private final Object[] proxies;
+    private final int[] realmIndexes;
+    private OrderedRealmCollection<T> collection;
+
+    // Scratch space for remapping
+    private final Object[] remappedProxies;
+    private final int[] remappedIndexes;
+
+    ProxyWindowCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        mask = capacity - 1;
+        proxies = new Object[capacity];
+        realmIndexes = new int[capacity];
+        remappedProxies = new Object[capacity];
+        remappedIndexes = new int[capacity];
+        Arrays.fill(realmIndexes, -1);
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(OrderedRealmCollection<T> data, int realmIndex) {
+        if (data != collection) {
+            clear();
+            collection = data;
+        }
+        int slot = realmIndex & mask;
+        if (realmIndexes[slot] == realmIndex) {
+            return (T) proxies[slot];
+        }
+        T proxy = data.get(realmIndex);
+        proxies[slot] = proxy;
+        realmIndexes[slot] = realmIndex;
+        return proxy;
+    }
+
+    void clear() {
+        Arrays.fill(proxies, null);
+        Arrays.fill(realmIndexes, -1);
+    }
+
+    /**
+     * Drops the deleted rows and moves the cached rows to their index after the changeSet.
+     */
+    void applyChangeSet(OrderedCollectionChangeSet changeSet) {
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
+        if (deletions.length == 0 && insertions.length == 0) {
+            return;
+        }
+
+        int count = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            int realmIndex = realmIndexes[slot];
+            if (realmIndex == -1) {
+                continue;
+            }
+            realmIndex = remap(realmIndex, deletions, insertions);
+            if (realmIndex != -1) {
+                remappedIndexes[count] = realmIndex;
+                remappedProxies[count] = proxies[slot];
+                count++;
+            }
+        }
+
+        clear();
+        for (int i = 0; i < count; i++) {
+            int slot = remappedIndexes[i] & mask;
+            realmIndexes[slot] = remappedIndexes[i];
+            proxies[slot] = remappedProxies[i];
+            remappedProxies[i] = null;
+        }
+    }
+
+    /**
+     * @return the index of the row after the changeSet or -1 if it was deleted.
+     */
+    private static int remap(
+            int realmIndex,
+            OrderedCollectionChangeSet.Range[] deletions,
+            OrderedCollectionChangeSet.Range[] insertions) {
+        // Deletions are in old indexes, insertions in new ones and both are sorted.
+        int shift = 0;
+        for (OrderedCollectionChangeSet.Range range : deletions) {
+            if (range.startIndex > realmIndex) {
+                break;
+            }
+            if (realmIndex < range.startIndex + range.length) {
+                return -1;
+            }
+            shift += range.length;
+        }
+        realmIndex -= shift;
+        for (OrderedCollectionChangeSet.Range range : insertions) {
+            if (range.startIndex > realmIndex) {
+                break;
+            }
+            realmIndex += range.length;
+        }
+        return realmIndex;
+    }
+}
@@ -18,9 +18,15 @@
 package io.realm;
 
 import android.content.Context;
+import android.view.Choreographer;
 import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -29,14 +35,17 @@ import android.widget.TextView;
 import com.tonicartos.superslim.GridSLM;
 import com.tonicartos.superslim.LinearSLM;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import co.moonmonkeylabs.realmrecyclerview.LoadMoreListItemView;
 import co.moonmonkeylabs.realmrecyclerview.R;
 import co.moonmonkeylabs.realmrecyclerview.RealmRecyclerView;
-import io.realm.internal.RealmObjectProxy;
+import io.realm.internal.OsSharedRealm;
 import io.realm.internal.Row;
+import io.realm.internal.Util;
 
 /**
  * The base {@link RecyclerView.Adapter} that includes custom functionality to be used with the
@@ -52,20 +61,35 @@ public abstract class RealmBasedRecyclerViewAdapter
         public final int realmIndex;
         public final int sectionHeaderIndex;
         public final String header;
+        public final int headerLevel;
 
         public RowWrapper(int realmIndex, int sectionHeaderIndex) {
             this(true, realmIndex, sectionHeaderIndex, null);
         }
 
         public RowWrapper(int sectionHeaderIndex, String header) {
-            this(false, -1, sectionHeaderIndex, header);
+            this(sectionHeaderIndex, header, 0);
+        }
+
+        public RowWrapper(int sectionHeaderIndex, String header, int headerLevel) {
+            this(false, -1, sectionHeaderIndex, header, headerLevel);
         }
 
         public RowWrapper(boolean isRealm, int realmIndex, int sectionHeaderIndex, String header) {
+            this(isRealm, realmIndex, sectionHeaderIndex, header, isRealm ? -1 : 0);
+        }
+
+        public RowWrapper(
+                boolean isRealm,
+                int realmIndex,
+                int sectionHeaderIndex,
+                String header,
+                int headerLevel) {
             this.isRealm = isRealm;
             this.realmIndex = realmIndex;
             this.sectionHeaderIndex = sectionHeaderIndex;
             this.header = header;
+            this.headerLevel = headerLevel;
         }
 
         @Override
@@ -75,6 +99,7 @@ public abstract class RealmBasedRecyclerViewAdapter
                     ", realmIndex=" + realmIndex +
                     ", sectionHeaderIndex=" + sectionHeaderIndex +
                     ", header='" + header + '\'' +
+                    ", headerLevel=" + headerLevel +
                     '}';
         }
     }
@@ -84,12 +109,46 @@ public abstract class RealmBasedRecyclerViewAdapter
     protected final int HEADER_VIEW_TYPE = 100;
     private final int LOAD_MORE_VIEW_TYPE = 101;
     private final int FOOTER_VIEW_TYPE = 102;
+    private final int PLACEHOLDER_VIEW_TYPE = 103;
+
+    // Stable ids of the rows that are not realm objects, which all use non-negative ids.
+    private static final long LOAD_MORE_ITEM_ID = -1;
+    private static final long FOOTER_ITEM_ID = -2;
+    private static final long HEADER_ITEM_ID_BASE = -3;
+    // Below the range of the header ids
+    private static final long PLACEHOLDER_ITEM_ID_BASE = Long.MIN_VALUE;
+    // How often a diff or section build is run again because the worker saw another version of
+    // the realm, before the work is done on the main thread instead.
+    private static final int MAX_VERSION_RETRIES = 3;
 
     private Context context;
     protected LayoutInflater inflater;
     protected OrderedRealmCollection<T> adapterData;
+    // The collection the listener is registered on. It is adapterData unless the sections are
+    // built in the background or changes are coalesced, then adapterData is a snapshot matching
+    // the notifications dispatched so far.
+    private OrderedRealmCollection<T> liveData;
+
+    private SectionedRowMap rowMap = new SectionedRowMap();
+    private final List<RowWrapper> rowWrappers = new AbstractList<RowWrapper>() {
+        @Override
+        public RowWrapper get(int position) {
+            String header = rowMap.getHeader(position);
+            int sectionFirstPosition = rowMap.getSectionFirstPosition(position);
+            if (header != null) {
+                return new RowWrapper(
+                        sectionFirstPosition, header, rowMap.getHeaderLevel(position));
+            }
+            return new RowWrapper(rowMap.getRealmIndex(position), sectionFirstPosition);
+        }
 
-    private List<RowWrapper> rowWrappers;
+        @Override
+        public int size() {
+            return rowMap.size();
+        }
+    };
+    // Reads the headers of liveData
+    private CollectionHeaderReader headerReader;
 
     private OrderedRealmCollectionChangeListener listener;
     private boolean automaticUpdate;
@@ -97,13 +156,124 @@ public abstract class RealmBasedRecyclerViewAdapter
     private boolean addSectionHeaders;
     private boolean isStickyHeader;
     private String realmHeaderColumnName;
+    private boolean isHeaderColumnSorted;
+    private boolean sectionAggregates;
+    private String sectionAggregateColumnName;
+    private SectionKeyExtractor sectionKeyExtractor;
+    private String parentHeaderColumnName;
+    private SectionKeyExtractor parentKeyExtractor;
+    // Used unless createHeaderFromColumnValue is overridden
+    private final SectionKeyExtractor defaultStringExtractor = new SectionKeyExtractor.StringExtractor();
+    private final SectionKeyExtractor defaultLongExtractor = new SectionKeyExtractor.LongExtractor();
+    private final boolean isDefaultHeaderFactory = isDefaultHeaderFactory();
+
+    private RealmQueryProvider<T> sectionQueryProvider;
+
+    // Results of updateAdapterDataAsync that are not loaded yet
+    private RealmResults<T> pendingResults;
+    private final RealmChangeListener<RealmResults<T>> pendingResultsListener =
+            new RealmChangeListener<RealmResults<T>>() {
+                @Override
+                public void onChange(RealmResults<T> results) {
+                    if (results != pendingResults || !results.isLoaded()) {
+                        return;
+                    }
+                    cancelPendingResults();
+                    updateAdapterData(results);
+                }
+            };
+    private BackgroundSectionBuilder<T> sectionBuilder;
+    private int sectionBuildGeneration;
+
+    private final PrimaryKeyReader primaryKeyReader = new PrimaryKeyReader();
+
+    /**
+     * Payload of rows changed by a realm change. Bound rows additionally receive the names of the
+     * changed fields as a String[] payload when field change payloads are enabled.
+     */
+    public static final Object PAYLOAD_ROW_CHANGED = new Object();
+    private boolean fieldChangePayloads;
+    // Holders with a bound object, whose listeners are detached while the updates are suspended
+    private final Set<RealmViewHolder> fieldListenedHolders = new HashSet<>();
+
+    private final ListUpdateCallback adapterUpdateCallback = new AdapterListUpdateCallback(this);
+    // Discards the updates, e.g. of a change set that is refreshed without animations
+    private static final ListUpdateCallback NO_UPDATES = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    };
+    private boolean coalesceChangesPerFrame;
+    private FrameCoalescingDispatcher frameDispatcher;
+    // Sections including the changes that are not dispatched yet
+    private SectionedRowMap pendingRowMap;
+
+    private MoveDetector moveDetector;
+    // The data before the next change set, only kept while moves are detected
+    private OrderedRealmCollection<T> previousData;
+
+    private boolean diffUpdates;
+    // Shared by the diffs of updateAdapterData and the catch-up after a suspension, so that a
+    // new diff supersedes a pending one of either kind.
+    private BackgroundDiffer differ;
+    private boolean isDiffPending;
+
+    private ProxyWindowCache<T> proxyCache;
+
+    private int placeholderCount;
+    // Placeholders are shown until the async query of liveData is loaded
+    private boolean isLoading;
+
+    private Lifecycle lifecycle;
+    private LifecycleEventObserver lifecycleObserver;
+    // The listener is detached and adapterData is a snapshot while updates are suspended
+    private boolean isSuspended;
+    private boolean isLifecycleStopped;
+    private boolean isUpdatesPaused;
+    private RealmQueryProvider<T> catchUpQueryProvider;
+
+    // Rows of adapterData hidden by pending swipe deletions
+    private final HiddenRows hiddenRows = new HiddenRows();
+
+    private int maxAnimatedRowCount;
+    private int maxAnimatedRangeCount;
+    private OnChangeSetMetrics onChangeSetMetricsListener;
+    private RecyclerView recyclerView;
 
     public interface OnRealmDataChange<T extends RealmModel> {
         void onDataChange(OrderedRealmCollection<T> newData);
     }
 
+    /**
+     * Runs the query of the adapter's data against the given {@link Realm}. Used to re-create the
+     * results on a background thread as Realm objects can't be passed between threads.
+     */
+    public interface RealmQueryProvider<T extends RealmModel> {
+        RealmResults<T> getResults(Realm realm);
+    }
+
     private OnRealmDataChange<T> onRealmDataChangeListener;
 
+    /**
+     * Receives the size of every change set handled by the adapter and whether it has been
+     * dispatched as a full refresh because it exceeded the thresholds.
+     */
+    public interface OnChangeSetMetrics {
+        void onChangeSetMetrics(int changedRowCount, int rangeCount, boolean isFullRefresh);
+    }
+
     public RealmBasedRecyclerViewAdapter(
             Context context,
             OrderedRealmCollection<T> adapterData,
@@ -143,7 +313,6 @@ public abstract class RealmBasedRecyclerViewAdapter
         this.inflater = LayoutInflater.from(context);
         this.listener = (!automaticUpdate) ? null : getRealmChangeListener();
 
-        rowWrappers = new ArrayList<>();
         if(null != adapterData) {
             setAdapterData(adapterData);
         }
@@ -162,8 +331,8 @@ public abstract class RealmBasedRecyclerViewAdapter
         }
         //clear any listener for previous data set when current data is null
         if(null == newAdapterData) {
-            if (listener != null && isDataValid()) {
-                removeListener(adapterData);
+            if (listener != null && isLiveDataValid()) {
+                removeListener(liveData);
                 return;
             }
         }
@@ -181,6 +350,16 @@ public abstract class RealmBasedRecyclerViewAdapter
 
     public abstract void onBindRealmViewHolder(VH holder, int position);
 
+    /**
+     * Called instead of {@link #onBindRealmViewHolder(RealmViewHolder, int)} when the row is
+     * rebound for a change that carries payloads. Override this method to only update the views
+     * of the changed fields, see {@link #isFieldChanged(List, String)}. The default implementation
+     * binds the whole row.
+     */
+    public void onBindRealmViewHolder(VH holder, int position, List<Object> payloads) {
+        onBindRealmViewHolder(holder, position);
+    }
+
     public VH onCreateFooterViewHolder(ViewGroup viewGroup) {
         throw new IllegalStateException("Implementation missing");
     }
@@ -189,15 +368,29 @@ public abstract class RealmBasedRecyclerViewAdapter
         throw new IllegalStateException("Implementation missing");
     }
 
+    /**
+     * Creates the view holder of the placeholder rows shown while an async query is loading, see
+     * {@link #setPlaceholderCount(int)}.
+     */
+    public VH onCreatePlaceholderViewHolder(ViewGroup viewGroup) {
+        throw new IllegalStateException("Implementation missing");
+    }
+
+    public void onBindPlaceholderViewHolder(VH holder, int position) {
+    }
+
     public RealmViewHolder onCreateHeaderViewHolder(ViewGroup viewGroup) {
         View view = inflater.inflate(R.layout.header_item, viewGroup, false);
         return new RealmViewHolder((TextView) view);
     }
 
+    /**
+     * Binds the header at the position. Override to show the aggregates of the section, see
+     * {@link #getSectionRowCount(int)} and {@link #setSectionAggregates(boolean, String)}.
+     */
     public void onBindHeaderViewHolder(RealmViewHolder holder, int position) {
-        String header = rowWrappers.get(position).header;
-        final GridSLM.LayoutParams layoutParams =
-            GridSLM.LayoutParams.from(holder.itemView.getLayoutParams());
+        String header = rowMap.getHeader(position);
+        final GridSLM.LayoutParams layoutParams = getSlmLayoutParams(holder.itemView);
 
         holder.headerTextView.setText(header);
         if (layoutParams.isHeaderInline()) {
@@ -222,6 +415,8 @@ public abstract class RealmBasedRecyclerViewAdapter
             return new RealmViewHolder(new LoadMoreListItemView(viewGroup.getContext()));
         } else if (viewType == FOOTER_VIEW_TYPE) {
             return onCreateFooterViewHolder(viewGroup);
+        } else if (viewType == PLACEHOLDER_VIEW_TYPE) {
+            return onCreatePlaceholderViewHolder(viewGroup);
         }
         return onCreateRealmViewHolder(viewGroup, viewType);
     }
@@ -230,72 +425,302 @@ public abstract class RealmBasedRecyclerViewAdapter
      * DON'T OVERRIDE THIS METHOD. Implement onBindRealmViewHolder instead.
      */
     @Override
-    @SuppressWarnings("unchecked")
     public final void onBindViewHolder(RealmViewHolder holder, int position) {
-        if (getItemViewType(position) == LOAD_MORE_VIEW_TYPE) {
+        bindViewHolder(holder, position, getItemViewType(position));
+    }
+
+    /**
+     * Binds the row with its view type resolved once by the caller.
+     */
+    @SuppressWarnings("unchecked")
+    private void bindViewHolder(RealmViewHolder holder, int position, int viewType) {
+        if (viewType == LOAD_MORE_VIEW_TYPE) {
             holder.loadMoreView.showSpinner();
-        } else if (getItemViewType(position) == FOOTER_VIEW_TYPE) {
+        } else if (viewType == FOOTER_VIEW_TYPE) {
             onBindFooterViewHolder((VH) holder, position);
+        } else if (viewType == PLACEHOLDER_VIEW_TYPE) {
+            if (addSectionHeaders && isStickyHeader) {
+                final GridSLM.LayoutParams layoutParams = getSlmLayoutParams(holder.itemView);
+                layoutParams.isHeader = false;
+                layoutParams.setSlm(LinearSLM.ID);
+                layoutParams.setFirstPosition(0);
+            }
+            onBindPlaceholderViewHolder((VH) holder, position);
         } else {
             if (addSectionHeaders && isStickyHeader) {
-                final String header = rowWrappers.get(position).header;
-                final GridSLM.LayoutParams layoutParams =
-                        GridSLM.LayoutParams.from(holder.itemView.getLayoutParams());
+                final boolean isHeader = rowMap.isHeader(position);
+                final GridSLM.LayoutParams layoutParams = getSlmLayoutParams(holder.itemView);
                 // Setup the header
-                if (header != null) {
+                if (isHeader) {
                     layoutParams.isHeader = true;
                     onBindHeaderViewHolder(holder,position);
                 } else {
-                    onBindRealmViewHolder((VH) holder, rowWrappers.get(position).realmIndex);
+                    int realmIndex = rowMap.getRealmIndex(position);
+                    if (isBindable(realmIndex)) {
+                        onBindRealmViewHolder((VH) holder, realmIndex);
+                        attachFieldChangeListener(holder, realmIndex);
+                    }
                 }
                 layoutParams.setSlm(LinearSLM.ID);
-                if (header != null) {
+                if (isHeader) {
                     layoutParams.setFirstPosition(position);
                 } else {
-                    layoutParams.setFirstPosition(rowWrappers.get(position).sectionHeaderIndex);
+                    layoutParams.setFirstPosition(rowMap.getSectionFirstPosition(position));
                 }
-                holder.itemView.setLayoutParams(layoutParams);
-            } else {
+            } else if (addSectionHeaders) {
                 onBindRealmViewHolder((VH) holder, position);
+            } else {
+                int realmIndex = toRealmIndex(position);
+                if (isBindable(realmIndex)) {
+                    onBindRealmViewHolder((VH) holder, realmIndex);
+                    attachFieldChangeListener(holder, realmIndex);
+                }
             }
         }
     }
 
+    /**
+     * @return the layout params of the view as {@link GridSLM.LayoutParams}. They are converted
+     * and set once, later binds of the same view update them in place instead of allocating new
+     * ones.
+     */
+    private static GridSLM.LayoutParams getSlmLayoutParams(View itemView) {
+        ViewGroup.LayoutParams params = itemView.getLayoutParams();
+        if (params instanceof GridSLM.LayoutParams) {
+            return (GridSLM.LayoutParams) params;
+        }
+        GridSLM.LayoutParams slmParams = GridSLM.LayoutParams.from(params);
+        itemView.setLayoutParams(slmParams);
+        return slmParams;
+    }
+
+    /**
+     * A snapshot may still contain rows that were deleted since it was taken.
+     */
+    boolean isBindable(int realmIndex) {
+        return adapterData == liveData || RealmObject.isValid(getItem(realmIndex));
+    }
+
+    /**
+     * DON'T OVERRIDE THIS METHOD. Implement onBindRealmViewHolder with payloads instead.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public final void onBindViewHolder(RealmViewHolder holder, int position, List<Object> payloads) {
+        int viewType = getItemViewType(position);
+        if (payloads.isEmpty() || viewType == HEADER_VIEW_TYPE
+                || viewType == LOAD_MORE_VIEW_TYPE || viewType == FOOTER_VIEW_TYPE
+                || viewType == PLACEHOLDER_VIEW_TYPE) {
+            bindViewHolder(holder, position, viewType);
+            return;
+        }
+        if (addSectionHeaders && isStickyHeader) {
+            onBindRealmViewHolder((VH) holder, rowMap.getRealmIndex(position), payloads);
+        } else if (addSectionHeaders) {
+            onBindRealmViewHolder((VH) holder, position, payloads);
+        } else {
+            onBindRealmViewHolder((VH) holder, toRealmIndex(position), payloads);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull RealmViewHolder holder) {
+        super.onViewRecycled(holder);
+        detachFieldChangeListener(holder);
+    }
+
+    /**
+     * Enables partial rebinds of changed rows. Changed rows are then notified with
+     * {@link #PAYLOAD_ROW_CHANGED} and each bound row listens to its object so that the names of
+     * its changed fields are delivered as an additional String[] payload to
+     * {@link #onBindRealmViewHolder(RealmViewHolder, int, List)}.
+     */
+    public void setFieldChangePayloads(boolean enabled) {
+        this.fieldChangePayloads = enabled;
+    }
+
+    /**
+     * @return true if the payloads name the field as changed or if they don't carry any field
+     * names, in which case every field has to be considered changed.
+     */
+    public static boolean isFieldChanged(List<Object> payloads, String fieldName) {
+        boolean hasFieldNames = false;
+        for (Object payload : payloads) {
+            if (payload instanceof String[]) {
+                hasFieldNames = true;
+                for (String changedField : (String[]) payload) {
+                    if (changedField.equals(fieldName)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return !hasFieldNames;
+    }
+
+    private void attachFieldChangeListener(final RealmViewHolder holder, int realmIndex) {
+        detachFieldChangeListener(holder);
+        if (!fieldChangePayloads) {
+            return;
+        }
+        if (holder.fieldChangeListener == null) {
+            holder.fieldChangeListener = new RealmObjectChangeListener<RealmModel>() {
+                @Override
+                public void onChange(RealmModel object, ObjectChangeSet changeSet) {
+                    if (changeSet == null || changeSet.isDeleted()) {
+                        return;
+                    }
+                    int position = holder.getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        notifyItemChanged(position, changeSet.getChangedFields());
+                    }
+                }
+            };
+        }
+        RealmModel object = getItem(realmIndex);
+        if (!isSuspended) {
+            RealmObject.addChangeListener(object, holder.fieldChangeListener);
+        }
+        holder.boundObject = object;
+        fieldListenedHolders.add(holder);
+    }
+
+    private void detachFieldChangeListener(RealmViewHolder holder) {
+        if (holder.boundObject == null) {
+            return;
+        }
+        if (!isSuspended && RealmObject.isValid(holder.boundObject)) {
+            RealmObject.removeChangeListener(holder.boundObject, holder.fieldChangeListener);
+        }
+        holder.boundObject = null;
+        fieldListenedHolders.remove(holder);
+    }
+
+    /**
+     * Removes or adds the listeners of the bound objects when the updates are suspended or
+     * resumed. The objects stay bound, rows changed in the meantime are rebound by the catch-up.
+     */
+    private void setFieldChangeListenersAttached(boolean attached) {
+        for (RealmViewHolder holder : fieldListenedHolders) {
+            if (!RealmObject.isValid(holder.boundObject)) {
+                continue;
+            }
+            if (attached) {
+                RealmObject.addChangeListener(holder.boundObject, holder.fieldChangeListener);
+            } else {
+                RealmObject.removeChangeListener(holder.boundObject, holder.fieldChangeListener);
+            }
+        }
+    }
+
+    /**
+     * Caches the objects of the most recently bound rows, see {@link #getItem(int)}. The size
+     * should cover the visible rows plus the rows prefetched and cached by the
+     * {@link RecyclerView}, a contiguous window of that many rows is cached without evictions.
+     * Set to 0 to disable the cache.
+     */
+    public void setProxyCacheSize(int size) {
+        proxyCache = size > 0 ? new ProxyWindowCache<T>(size) : null;
+    }
+
+    /**
+     * @return the object at the realm index, which is the position passed to
+     * {@link #onBindRealmViewHolder(RealmViewHolder, int)}. Use this instead of
+     * {@code adapterData.get(position)} to reuse the cached object of a recently bound row, see
+     * {@link #setProxyCacheSize(int)}.
+     */
+    public T getItem(int realmIndex) {
+        if (proxyCache == null) {
+            return adapterData.get(realmIndex);
+        }
+        return proxyCache.get(adapterData, realmIndex);
+    }
+
+    /**
+     * Drops the cached objects, which belong to data that is replaced.
+     */
+    private void clearProxyCache() {
+        if (proxyCache != null) {
+            proxyCache.clear();
+        }
+    }
+
+    /**
+     * Creates an accessor that reads the fields directly from the rows of this adapter's data,
+     * see {@link RealmRowAccessor}.
+     */
+    public RealmRowAccessor createRowAccessor(String... fieldNames) {
+        return new RealmRowAccessor(this, fieldNames);
+    }
+
+    /**
+     * @return the row at the realm index without creating its object, see {@link #getItem(int)}.
+     */
+    Row getRow(int realmIndex) {
+        return ColumnAccessor.rowAt(adapterData, realmIndex);
+    }
+
+    /**
+     * Shows the data with the sections of the row map without listening to the data or notifying
+     * the observers of the adapter, for tests that run without the Android framework.
+     */
+    void setDataWithoutNotifying(OrderedRealmCollection<T> data, SectionedRowMap rowMap) {
+        adapterData = data;
+        liveData = data;
+        this.rowMap = rowMap;
+    }
+
     public Object getLastItem() {
         if (addSectionHeaders) {
-            return adapterData.get(rowWrappers.get(rowWrappers.size() - 1).realmIndex);
+            return adapterData.get(rowMap.getRealmCount() - 1);
         } else {
-            return adapterData.get(adapterData.size() - 1);
+            return adapterData.get(toRealmIndex(adapterData.size() - hiddenRows.getCount() - 1));
         }
     }
 
     @Override
     public int getItemCount() {
-        int extraCount = loadMoreItem == null ? 0 : 1;
-        extraCount += footerItem == null ? 0 : 1;
+        int extraCount = getExtraItemCount();
+
+        if (isLoading) {
+            return placeholderCount + extraCount;
+        }
 
         if (addSectionHeaders) {
-            return rowWrappers.size() + extraCount;
+            return rowMap.size() + extraCount;
         }
 
         if (!isDataValid()) {
             return extraCount;
         }
 
-        return adapterData.size() + extraCount;
+        return adapterData.size() - hiddenRows.getCount() + extraCount;
+    }
+
+    private int getExtraItemCount() {
+        int extraCount = loadMoreItem == null ? 0 : 1;
+        extraCount += footerItem == null ? 0 : 1;
+        return extraCount;
     }
 
     public boolean isEmpty() {
-        return !isDataValid() || adapterData.size() == 0;
+        if (isLoading) {
+            return false;
+        }
+        return !isDataValid() || adapterData.size() - hiddenRows.getCount() == 0;
     }
 
     @Override
     public int getItemViewType(int position) {
-        if (loadMoreItem != null && position == getItemCount() - 1) {
+        boolean isLastPosition = (loadMoreItem != null || footerItem != null)
+                && position == getItemCount() - 1;
+        if (loadMoreItem != null && isLastPosition) {
             return LOAD_MORE_VIEW_TYPE;
-        } else if (footerItem != null && position == getItemCount() - 1) {
+        } else if (footerItem != null && isLastPosition) {
             return FOOTER_VIEW_TYPE;
-        } else if (isStickyHeader && !rowWrappers.isEmpty() && !rowWrappers.get(position).isRealm) {
+        } else if (isLoading) {
+            return PLACEHOLDER_VIEW_TYPE;
+        } else if (isStickyHeader && rowMap.size() > 0 && rowMap.isHeader(position)) {
             //TODO: called only when using sticky headers but this does not work need to test this
             return HEADER_VIEW_TYPE;
         }
@@ -306,12 +731,68 @@ public abstract class RealmBasedRecyclerViewAdapter
         return super.getItemViewType(position);
     }
 
+    /**
+     * Enables stable ids that are derived from the primary key of the realm objects, so that
+     * {@link RecyclerView} can keep the views of rows that did not change on a full refresh.
+     * String keys are hashed. Headers, the footer and the load more row use reserved negative ids,
+     * the id of a header is derived from the primary key of the first row of its section.
+     *
+     * Has to be called before the adapter is set on the {@link RecyclerView}.
+     */
+    public void setPrimaryKeyStableIds(boolean enabled) {
+        setHasStableIds(enabled);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (!hasStableIds()) {
+            return RecyclerView.NO_ID;
+        }
+        int viewType = getItemViewType(position);
+        if (viewType == LOAD_MORE_VIEW_TYPE) {
+            return LOAD_MORE_ITEM_ID;
+        } else if (viewType == FOOTER_VIEW_TYPE) {
+            return FOOTER_ITEM_ID;
+        } else if (viewType == PLACEHOLDER_VIEW_TYPE) {
+            return PLACEHOLDER_ITEM_ID_BASE + position;
+        }
+
+        int realmIndex = toRealmIndex(position);
+        if (addSectionHeaders) {
+            int headerLevel = rowMap.getHeaderLevel(position);
+            if (headerLevel != -1) {
+                // Labels repeat across sections, the first row of the section doesn't.
+                T firstItem = getItem(rowMap.getSectionRealmStart(position));
+                if (!RealmObject.isValid(firstItem)) {
+                    return RecyclerView.NO_ID;
+                }
+                long headerHash = primaryKeyReader.readId(firstItem) * 31 + headerLevel;
+                return HEADER_ITEM_ID_BASE - (headerHash & 0x3FFFFFFFFFFFFFFFL);
+            }
+            realmIndex = rowMap.getRealmIndex(position);
+        }
+        T item = getItem(realmIndex);
+        if (!RealmObject.isValid(item)) {
+            return RecyclerView.NO_ID;
+        }
+        return primaryKeyReader.readId(item) & Long.MAX_VALUE;
+    }
+
     /**
      * Ensure {@link #close()} is called whenever {@link Realm#close()} is called to ensure that the
      * {@link #adapterData} are invalidated and the change listener removed.
      */
     public void close() {
-        updateAdapterData(null);
+        // Unbound without resuming, the data is released anyway.
+        removeLifecycleObserver();
+        cancelPendingResults();
+        replaceAdapterData(null);
+        if (frameDispatcher != null) {
+            frameDispatcher.cancel();
+        }
+        if (sectionBuilder != null) {
+            sectionBuilder.quit();
+        }
     }
 
     /**
@@ -321,22 +802,200 @@ public abstract class RealmBasedRecyclerViewAdapter
      * @param queryResults the new OrderedRealmCollection coming from the new query.
      */
     public void updateAdapterData(OrderedRealmCollection<T> queryResults) {
-        if (listener != null && isDataValid()) {
-            removeListener(adapterData);
+        cancelPendingResults();
+        if (diffUpdates && canDiff(queryResults)) {
+            diffAdapterData(queryResults, null);
+            return;
+        }
+        replaceAdapterData(queryResults);
+    }
+
+    /**
+     * Like {@link #updateAdapterData(OrderedRealmCollection)}, but the query, including its sort,
+     * is run asynchronously by Realm on its background thread. The adapter keeps showing its
+     * current data until the results are loaded and then swaps them in at once, with a diff if
+     * {@link #setDiffUpdates(boolean)} is enabled. A newer update supersedes a pending one.
+     */
+    public void updateAdapterDataAsync(RealmQuery<T> query) {
+        cancelPendingResults();
+        pendingResults = query.findAllAsync();
+        pendingResults.addChangeListener(pendingResultsListener);
+    }
+
+    private void cancelPendingResults() {
+        if (pendingResults == null) {
+            return;
+        }
+        if (pendingResults.isValid()) {
+            pendingResults.removeChangeListener(pendingResultsListener);
+        }
+        pendingResults = null;
+    }
+
+    private void replaceAdapterData(OrderedRealmCollection<T> queryResults) {
+        cancelDiffs();
+        // With background sections, the current rows and sections are shown until the new ones
+        // are built.
+        OrderedRealmCollection<T> shownData = null;
+        if (addSectionHeaders && sectionQueryProvider != null && isDataValid() && rowMap.size() > 0) {
+            shownData = adapterData == liveData ? adapterData.createSnapshot() : adapterData;
+        }
+        if (listener != null && isLiveDataValid()) {
+            removeListener(liveData);
         }
 
+        clearProxyCache();
         adapterData = queryResults;
-        if (listener != null && adapterData != null) {
+        liveData = queryResults;
+        hiddenRows.clear();
+        headerReader = queryResults == null ? null : createHeaderReader(queryResults);
+        primaryKeyReader.reset();
+        if (listener != null && adapterData != null && !isSuspended) {
             addListener(adapterData);
         }
+        if (frameDispatcher != null) {
+            frameDispatcher.cancel();
+        }
+        if (isCoalescingChanges() || (isSuspended && adapterData != null)) {
+            adapterData = liveData.createSnapshot();
+        }
+        updatePreviousData();
 
-        createRowWrappers();
+        isLoading = listener != null && queryResults != null && queryResults.isValid()
+                && !queryResults.isLoaded();
+
+        if (isBuildingSectionsInBackground()) {
+            if (shownData != null && !isLoading) {
+                adapterData = shownData;
+                buildSectionsInBackground(0);
+                return;
+            }
+            rowMap.clear();
+            buildSectionsInBackground(0);
+        } else {
+            createRowWrappers();
+        }
 
         if (adapterData != null) {
     	    notifyDataSetChanged();
 	    }
     }
 
+    /**
+     * Enables animated updates when the data is replaced through
+     * {@link #updateAdapterData(OrderedRealmCollection)}, e.g. for a new search or sort order.
+     * Instead of refreshing the whole list, the old and new data are diffed by primary key and a
+     * hash of their content on a background thread and only the differences are dispatched. The
+     * old data is shown until then. Only supported without section headers.
+     */
+    public void setDiffUpdates(boolean diffUpdates) {
+        this.diffUpdates = diffUpdates;
+    }
+
+    /**
+     * Drops the result of a pending diff, which was calculated against data that is replaced.
+     */
+    private void cancelDiffs() {
+        if (differ != null) {
+            differ.cancel();
+        }
+        isDiffPending = false;
+    }
+
+    private boolean canDiff(OrderedRealmCollection<T> queryResults) {
+        return queryResults != null && queryResults.isValid() && queryResults.isLoaded()
+                && isDataValid() && adapterData.isLoaded()
+                && !addSectionHeaders && !isCoalescingChanges();
+    }
+
+    /**
+     * @param queryProvider runs the query of the queryResults on the diff thread, may be null to
+     * read them on this thread.
+     */
+    private void diffAdapterData(
+            final OrderedRealmCollection<T> queryResults,
+            final RealmQueryProvider<T> queryProvider) {
+        diffAdapterData(queryResults, queryProvider, 0);
+    }
+
+    /**
+     * @param attempt the number of previous diffs that were dropped because the diff thread saw
+     * another version.
+     */
+    private void diffAdapterData(
+            final OrderedRealmCollection<T> queryResults,
+            final RealmQueryProvider<T> queryProvider,
+            final int attempt) {
+        // Only one diff is applied, each one starts from the data that is shown.
+        cancelDiffs();
+        // The old data must not change while the diff is calculated.
+        if (listener != null && isLiveDataValid()) {
+            removeListener(liveData);
+        }
+        if (adapterData == liveData) {
+            adapterData = liveData.createSnapshot();
+        }
+        final OsSharedRealm.VersionID versionID = getRealm(queryResults).sharedRealm.getVersionID();
+        final int diffHiddenModCount = hiddenRows.getModCount();
+
+        BackgroundDiffer.Callback callback = new BackgroundDiffer.Callback() {
+            @Override
+            public void onDiffCalculated(
+                    DiffUtil.DiffResult diffResult,
+                    OsSharedRealm.VersionID newDataVersion) {
+                isDiffPending = false;
+                if (newDataVersion != null && queryResults.isValid()
+                        && diffHiddenModCount == hiddenRows.getModCount()
+                        && !newDataVersion.equals(getRealm(queryResults).sharedRealm.getVersionID())) {
+                    // The worker and this thread saw different versions, try again. Each diff reads
+                    // the old keys on this thread, under constant writes the data is replaced.
+                    if (attempt < MAX_VERSION_RETRIES) {
+                        diffAdapterData(queryResults, queryProvider, attempt + 1);
+                    } else {
+                        replaceAdapterData(queryResults);
+                    }
+                    return;
+                }
+                if (!queryResults.isValid()
+                        || (newDataVersion == null
+                                && !versionID.equals(getRealm(queryResults).sharedRealm.getVersionID()))
+                        || diffHiddenModCount != hiddenRows.getModCount()) {
+                    // The new data or the shown rows changed in the meantime, the diff does not
+                    // apply anymore.
+                    replaceAdapterData(queryResults);
+                    return;
+                }
+                if (listener != null && isLiveDataValid()) {
+                    removeListener(liveData);
+                }
+                clearProxyCache();
+                adapterData = queryResults;
+                liveData = queryResults;
+                hiddenRows.clear();
+                headerReader = createHeaderReader(queryResults);
+                if (listener != null && !isSuspended) {
+                    addListener(liveData);
+                }
+                if (isSuspended) {
+                    adapterData = liveData.createSnapshot();
+                }
+                updatePreviousData();
+                diffResult.dispatchUpdatesTo(adapterUpdateCallback);
+            }
+        };
+        if (differ == null) {
+            differ = new BackgroundDiffer(primaryKeyReader);
+        }
+        isDiffPending = true;
+        if (queryProvider != null) {
+            differ.diff(adapterData, hiddenRows.getIndexes(), hiddenRows.getCount(),
+                    getRealm(queryResults).getConfiguration(), queryProvider, callback);
+        } else {
+            differ.diff(adapterData, hiddenRows.getIndexes(), hiddenRows.getCount(),
+                    queryResults, callback);
+        }
+    }
+
     private OrderedRealmCollectionChangeListener<OrderedRealmCollection<T>> getRealmChangeListener() {
         return new OrderedRealmCollectionChangeListener<OrderedRealmCollection<T>>() {
 
@@ -347,81 +1006,704 @@ public abstract class RealmBasedRecyclerViewAdapter
                     onRealmDataChangeListener.onDataChange(elements);
                 }
 
+                if (isBuildingSectionsInBackground()) {
+                    buildSectionsInBackground(0);
+                    return;
+                }
+
                 // null Changes means the async query returns the first time or
                 // if there are headers then we do not know the exact ranges
-                if (changeSet == null) {
-                    notifyDataSetChanged();
+                if (changeSet == null
+                        || changeSet.getState() == OrderedCollectionChangeSet.State.INITIAL) {
+                    clearProxyCache();
+                    if (isCoalescingChanges()) {
+                        frameDispatcher.cancel();
+                        adapterData = liveData.createSnapshot();
+                    }
+                    hiddenRows.clear();
+                    updatePreviousData();
+                    createRowWrappers();
+                    notifyDataRefreshed();
                     return;
                 }
 
-                if(addSectionHeaders) {
-                    //in this case changes from realm will not map to recycler view dataset due to headers
-                    //update row wrappers since data is updated
-                    createRowWrappers();
-                    notifyDataSetChanged();
-                } else {
-                    // For deletions, the adapter has to be notified in reverse order.
-                    OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
-                    for (int i = deletions.length - 1; i >= 0; i--) {
-                        OrderedCollectionChangeSet.Range range = deletions[i];
-                        notifyItemRangeRemoved(range.startIndex, range.length);
-                    }
+                if (proxyCache != null && adapterData == liveData) {
+                    // A snapshot doesn't change, the cache is dropped once it is replaced.
+                    proxyCache.applyChangeSet(changeSet);
+                }
 
-                    OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
-                    for (OrderedCollectionChangeSet.Range range : insertions) {
-                        notifyItemRangeInserted(range.startIndex, range.length);
+                if (isLargeChangeSet(changeSet)) {
+                    if (hiddenRows.getCount() > 0) {
+                        dispatchChangeSet(changeSet, hiddenRows.translateTo(NO_UPDATES));
                     }
+                    refreshWithoutAnimations();
+                    updatePreviousData();
+                    return;
+                }
 
-                    OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
-                    for (OrderedCollectionChangeSet.Range range : modifications) {
-                        notifyItemRangeChanged(range.startIndex, range.length);
+                ListUpdateCallback updateCallback = adapterUpdateCallback;
+                SectionedRowMap updatedRowMap = rowMap;
+                if (hiddenRows.getCount() > 0) {
+                    // The hidden rows are mapped to adapterData, which then can't wait for the
+                    // next frame.
+                    if (isCoalescingChanges()) {
+                        adapterData = liveData.createSnapshot();
+                    }
+                    updateCallback = hiddenRows.translateTo(adapterUpdateCallback);
+                } else if (isCoalescingChanges()) {
+                    if (addSectionHeaders && !frameDispatcher.isScheduled()) {
+                        pendingRowMap.copyFrom(rowMap);
                     }
+                    updateCallback = frameDispatcher;
+                    updatedRowMap = pendingRowMap;
+                    frameDispatcher.schedule();
                 }
 
+                if(addSectionHeaders) {
+                    // Realm ranges do not map to adapter positions due to the headers, the row
+                    // map translates them and only re-evaluates the affected section boundaries.
+                    updatedRowMap.applyChangeSet(
+                            changeSet,
+                            headerReader,
+                            getChangePayload(),
+                            updateCallback);
+                } else if (previousData == null || !moveDetector.dispatch(
+                        changeSet, previousData, liveData, getChangePayload(), updateCallback)) {
+                    dispatchChangeSet(changeSet, updateCallback);
+                }
+                updatePreviousData();
             }
         };
     }
 
-    private void createRowWrappers() {
-        if (!isDataValid() || !addSectionHeaders) {
+    /**
+     * Sets the number of placeholder rows shown while the async query of the data is loading,
+     * e.g. the results of {@code findAllAsync()}. Their view holders are created by
+     * {@link #onCreatePlaceholderViewHolder(ViewGroup)}. Once the results are loaded the
+     * placeholders are removed and the rows are notified as a single insertion.
+     */
+    public void setPlaceholderCount(int placeholderCount) {
+        this.placeholderCount = placeholderCount;
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    /**
+     * @return true while the async query of the data is loading.
+     */
+    public boolean isLoading() {
+        return isLoading;
+    }
+
+    /**
+     * Notifies a refresh of all rows, the placeholders of a loading query are replaced by one
+     * insertion of the loaded rows instead.
+     */
+    private void notifyDataRefreshed() {
+        if (!isLoading) {
+            notifyDataSetChanged();
             return;
         }
-        String lastHeader = "";
-        int headerCount = 0;
-        int sectionFirstPosition = 0;
-        rowWrappers.clear();
-
-        int i = 0;
-        for (RealmModel result : adapterData) {
-            Object rawHeader;
-            Row row = ((RealmObjectProxy) result).realmGet$proxyState().getRow$realm();
-            long realmHeaderColumnIndex = row.getColumnIndex(realmHeaderColumnName);
-            RealmFieldType fieldType = row.getColumnType(realmHeaderColumnIndex);
-
-            if (fieldType == RealmFieldType.STRING) {
-                rawHeader = ((RealmObjectProxy) result)
-                        .realmGet$proxyState().getRow$realm().getString(realmHeaderColumnIndex);
-
-            } else if (fieldType == RealmFieldType.INTEGER) {
-                rawHeader = ((RealmObjectProxy) result)
-                        .realmGet$proxyState().getRow$realm().getLong(realmHeaderColumnIndex);
-            } else {
-                throw new IllegalStateException("columnValue type not supported");
-            }
+        isLoading = false;
+        if (placeholderCount > 0) {
+            notifyItemRangeRemoved(0, placeholderCount);
+        }
+        int rowCount = getItemCount() - getExtraItemCount();
+        if (rowCount > 0) {
+            notifyItemRangeInserted(0, rowCount);
+        }
+    }
+
+    /**
+     * Sets the thresholds above which a change set is not dispatched row by row but as a full
+     * refresh without item animations, e.g. for bulk imports. A value of 0 disables a threshold.
+     *
+     * @param maxAnimatedRowCount the maximum number of deleted, inserted and changed rows.
+     * @param maxAnimatedRangeCount the maximum number of deletion, insertion and change ranges.
+     */
+    public void setLargeChangeSetThresholds(int maxAnimatedRowCount, int maxAnimatedRangeCount) {
+        this.maxAnimatedRowCount = maxAnimatedRowCount;
+        this.maxAnimatedRangeCount = maxAnimatedRangeCount;
+    }
+
+    public void setOnChangeSetMetricsListener(OnChangeSetMetrics onChangeSetMetricsListener) {
+        this.onChangeSetMetricsListener = onChangeSetMetricsListener;
+    }
+
+    private boolean isLargeChangeSet(OrderedCollectionChangeSet changeSet) {
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
+        OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
+        int rangeCount = deletions.length + insertions.length + modifications.length;
+        int rowCount = getRowCount(deletions) + getRowCount(insertions) + getRowCount(modifications);
+
+        boolean isLarge = (maxAnimatedRowCount > 0 && rowCount > maxAnimatedRowCount)
+                || (maxAnimatedRangeCount > 0 && rangeCount > maxAnimatedRangeCount);
+        if (onChangeSetMetricsListener != null) {
+            onChangeSetMetricsListener.onChangeSetMetrics(rowCount, rangeCount, isLarge);
+        }
+        return isLarge;
+    }
+
+    private static int getRowCount(OrderedCollectionChangeSet.Range[] ranges) {
+        int count = 0;
+        for (OrderedCollectionChangeSet.Range range : ranges) {
+            count += range.length;
+        }
+        return count;
+    }
+
+    /**
+     * Refreshes the whole list with the item animator of the {@link RecyclerView} removed until
+     * the frame after the next layout pass.
+     */
+    private void refreshWithoutAnimations() {
+        if (isCoalescingChanges()) {
+            frameDispatcher.cancel();
+            adapterData = liveData.createSnapshot();
+        }
+        createRowWrappers();
+
+        final RecyclerView view = recyclerView;
+        final RecyclerView.ItemAnimator itemAnimator = view == null ? null : view.getItemAnimator();
+        if (itemAnimator != null) {
+            itemAnimator.endAnimations();
+            view.setItemAnimator(null);
+            // The layout pass runs in the next frame, the animator is restored in the one after.
+            Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                        @Override
+                        public void doFrame(long frameTimeNanos) {
+                            if (view.getItemAnimator() == null) {
+                                view.setItemAnimator(itemAnimator);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Suspends the automatic updates while the lifecycle is stopped. The change listener and the
+     * listeners of the bound rows for {@link #setFieldChangePayloads(boolean)} are detached and
+     * the rows keep being read from a snapshot of the data. When the lifecycle is
+     * started again, the snapshot is diffed against the current data on a background thread and
+     * only the differences are dispatched, instead of every change made in the meantime. The diff
+     * requires a primary key, with section headers the list is refreshed once instead.
+     *
+     * The adapter is unbound when the lifecycle is destroyed, the updates stay suspended until it
+     * is bound to another lifecycle. Set to null to unbind it earlier and resume the updates.
+     */
+    public void bindToLifecycle(LifecycleOwner owner) {
+        if (removeLifecycleObserver()) {
+            updateSuspension();
+        }
+        if (owner == null) {
+            return;
+        }
+        if (lifecycleObserver == null) {
+            lifecycleObserver = new LifecycleEventObserver() {
+                @Override
+                public void onStateChanged(
+                        @NonNull LifecycleOwner source,
+                        @NonNull Lifecycle.Event event) {
+                    if (event == Lifecycle.Event.ON_STOP) {
+                        isLifecycleStopped = true;
+                        updateSuspension();
+                    } else if (event == Lifecycle.Event.ON_START) {
+                        isLifecycleStopped = false;
+                        updateSuspension();
+                    } else if (event == Lifecycle.Event.ON_DESTROY) {
+                        // Unbinds without resuming, the destroyed screen won't show the rows.
+                        source.getLifecycle().removeObserver(this);
+                        lifecycle = null;
+                    }
+                }
+            };
+        }
+        lifecycle = owner.getLifecycle();
+        lifecycle.addObserver(lifecycleObserver);
+    }
+
+    /**
+     * @return true if the adapter was bound to a lifecycle.
+     */
+    private boolean removeLifecycleObserver() {
+        if (lifecycle == null) {
+            return false;
+        }
+        lifecycle.removeObserver(lifecycleObserver);
+        lifecycle = null;
+        isLifecycleStopped = false;
+        return true;
+    }
+
+    /**
+     * Pauses the automatic updates, e.g. during a bulk import of many transactions. The rows keep
+     * being read from a snapshot of the data and no change is notified until
+     * {@link #resumeUpdates()}, which dispatches all changes made in the meantime as a single
+     * update, the same way as when a bound lifecycle is started again, see
+     * {@link #bindToLifecycle(LifecycleOwner)}.
+     */
+    public void pauseUpdates() {
+        isUpdatesPaused = true;
+        updateSuspension();
+    }
+
+    public void resumeUpdates() {
+        isUpdatesPaused = false;
+        updateSuspension();
+    }
+
+    public boolean isUpdatesPaused() {
+        return isUpdatesPaused;
+    }
+
+    private void updateSuspension() {
+        if (isUpdatesPaused || isLifecycleStopped) {
+            suspendUpdates();
+        } else {
+            resumeUpdatesFromSnapshot();
+        }
+    }
 
-            String header = createHeaderFromColumnValue(rawHeader);
-            if (!TextUtils.equals(lastHeader, header)) {
-                // Insert new header view and update section data.
-                sectionFirstPosition = i + headerCount;
-                lastHeader = header;
-                headerCount += 1;
+    /**
+     * Sets the query of the adapter's data, which lets the catch-up diff after the updates are
+     * resumed read the keys of the current data on its background thread from a separate
+     * {@link Realm}, see {@link #pauseUpdates()}. Only the keys of the shown snapshot are then
+     * read on the main thread. Set to null to read both on the main thread.
+     */
+    public void setBackgroundCatchUpQuery(RealmQueryProvider<T> queryProvider) {
+        this.catchUpQueryProvider = queryProvider;
+    }
 
-                rowWrappers.add(new RowWrapper(sectionFirstPosition, header));
+    /**
+     * Detaches the listeners and keeps showing a snapshot until
+     * {@link #resumeUpdatesFromSnapshot()}. Called again while suspended, which has no effect.
+     */
+    void suspendUpdates() {
+        if (isSuspended) {
+            return;
+        }
+        isSuspended = true;
+        if (frameDispatcher != null) {
+            // The snapshot has to match the notifications dispatched so far.
+            frameDispatcher.flush();
+        }
+        // A pending background build would swap in sections newer than the snapshot.
+        sectionBuildGeneration++;
+        setFieldChangeListenersAttached(false);
+        clearProxyCache();
+        if (listener != null && isLiveDataValid()) {
+            removeListener(liveData);
+            if (adapterData == liveData) {
+                adapterData = liveData.createSnapshot();
             }
-            rowWrappers.add(new RowWrapper(i++, sectionFirstPosition));
         }
     }
 
+    /**
+     * Attaches the listeners again and catches up with the changes made while suspended.
+     */
+    void resumeUpdatesFromSnapshot() {
+        if (!isSuspended) {
+            return;
+        }
+        isSuspended = false;
+        setFieldChangeListenersAttached(true);
+        if (listener == null || !isLiveDataValid()) {
+            return;
+        }
+        if (isDiffPending) {
+            // The pending diff starts from the shown snapshot as well and listens to its data
+            // once it lands, a second one would be applied on top of it.
+            return;
+        }
+        if (adapterData != liveData && canDiff(liveData)) {
+            diffAdapterData(liveData, catchUpQueryProvider);
+        } else {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        if (this.recyclerView == recyclerView) {
+            this.recyclerView = null;
+        }
+    }
+
+    /**
+     * Enables the detection of rows that moved within sorted results, e.g. because their sort key
+     * changed. Realm reports those as a deletion and an insertion, which are matched by primary
+     * key and dispatched as a move followed by a change so that the view of the row is kept and
+     * animated to its new position. Only supported without section headers.
+     */
+    public void setDetectMoves(boolean detectMoves) {
+        if (detectMoves && addSectionHeaders) {
+            throw new IllegalStateException("Move detection is not supported with section headers");
+        }
+        moveDetector = detectMoves ? new MoveDetector(primaryKeyReader) : null;
+        updatePreviousData();
+    }
+
+    private void updatePreviousData() {
+        previousData = moveDetector != null && isLiveDataValid() ? liveData.createSnapshot() : null;
+    }
+
+    private void dispatchChangeSet(
+            OrderedCollectionChangeSet changeSet,
+            ListUpdateCallback updateCallback) {
+        // For deletions, the adapter has to be notified in reverse order.
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            OrderedCollectionChangeSet.Range range = deletions[i];
+            updateCallback.onRemoved(range.startIndex, range.length);
+        }
+
+        OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
+        for (OrderedCollectionChangeSet.Range range : insertions) {
+            updateCallback.onInserted(range.startIndex, range.length);
+        }
+
+        OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
+        for (OrderedCollectionChangeSet.Range range : modifications) {
+            updateCallback.onChanged(range.startIndex, range.length, getChangePayload());
+        }
+    }
+
+    /**
+     * Coalesces the changes of all change sets that arrive within one frame into a single update
+     * that is dispatched at the beginning of the next frame. The adapter keeps reading from a
+     * snapshot of its data until then. Ignored while the sections are built in the background.
+     */
+    public void setCoalesceChangesPerFrame(boolean coalesceChangesPerFrame) {
+        this.coalesceChangesPerFrame = coalesceChangesPerFrame;
+        if (coalesceChangesPerFrame && frameDispatcher == null) {
+            pendingRowMap = createRowMap();
+            frameDispatcher = new FrameCoalescingDispatcher(adapterUpdateCallback, new Runnable() {
+                @Override
+                public void run() {
+                    if (addSectionHeaders) {
+                        SectionedRowMap dispatchedRowMap = rowMap;
+                        rowMap = pendingRowMap;
+                        pendingRowMap = dispatchedRowMap;
+                    }
+                    adapterData = liveData.createSnapshot();
+                }
+            });
+        }
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    private boolean isCoalescingChanges() {
+        return coalesceChangesPerFrame && isLiveDataValid() && !isBuildingSectionsInBackground();
+    }
+
+    Object getChangePayload() {
+        return fieldChangePayloads ? PAYLOAD_ROW_CHANGED : null;
+    }
+
+    private void createRowWrappers() {
+        if (!isLiveDataValid() || !addSectionHeaders) {
+            rowMap.clear();
+            return;
+        }
+        if (isHeaderColumnSorted) {
+            rowMap.rebuildSorted(liveData.size(), headerReader);
+        } else {
+            rowMap.rebuild(liveData.size(), headerReader);
+        }
+    }
+
+    /**
+     * Collapses the section of the header at the position. Its rows are hidden with a single
+     * removal and the header stays. The state is kept by header, so it survives updates of the
+     * data and applies to all sections with the same header. With parent headers it is kept by
+     * both headers, so collapsing a section doesn't collapse the same header under other parents.
+     */
+    public void collapseSection(int headerPosition) {
+        setSectionCollapsed(headerPosition, true);
+    }
+
+    /**
+     * Expands the section of the header at the position, see {@link #collapseSection(int)}.
+     */
+    public void expandSection(int headerPosition) {
+        setSectionCollapsed(headerPosition, false);
+    }
+
+    public void toggleSection(int headerPosition) {
+        setSectionCollapsed(headerPosition, !isSectionCollapsed(headerPosition));
+    }
+
+    public boolean isSectionCollapsed(int headerPosition) {
+        return rowMap.isSectionCollapsed(headerPosition);
+    }
+
+    private void setSectionCollapsed(int headerPosition, boolean collapsed) {
+        if (!addSectionHeaders || !rowMap.isSectionHeader(headerPosition)) {
+            throw new IllegalArgumentException("No section header at position " + headerPosition);
+        }
+        if (frameDispatcher != null && frameDispatcher.isScheduled()) {
+            // The pending updates are relative to the current sections.
+            frameDispatcher.flush();
+        }
+        rowMap.setSectionCollapsed(headerPosition, collapsed, adapterUpdateCallback);
+    }
+
+    /**
+     * Maintains the aggregates of each section while the sections are built and updated, so that
+     * they can be shown by {@link #onBindHeaderViewHolder(RealmViewHolder, int)} without another
+     * query. The headers of sections whose aggregates changed are rebound.
+     *
+     * @param aggregateColumnName an integer, float or double column whose sum, minimum and
+     * maximum are aggregated in addition to the row count, or null to only count the rows. The
+     * column is read once for every row while the sections are built.
+     */
+    public void setSectionAggregates(boolean enabled, String aggregateColumnName) {
+        this.sectionAggregates = enabled;
+        this.sectionAggregateColumnName = enabled ? aggregateColumnName : null;
+        rowMap.setAggregated(enabled, sectionAggregateColumnName != null);
+        if (pendingRowMap != null) {
+            pendingRowMap.setAggregated(enabled, sectionAggregateColumnName != null);
+        }
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    String getSectionAggregateColumnName() {
+        return sectionAggregateColumnName;
+    }
+
+    /**
+     * @return the number of rows in the section of the header at the position.
+     */
+    public int getSectionRowCount(int headerPosition) {
+        return rowMap.getSectionRowCount(headerPosition);
+    }
+
+    /**
+     * @return the sum of the aggregate column in the section of the header at the position.
+     */
+    public double getSectionSum(int headerPosition) {
+        return rowMap.getSectionSum(headerPosition);
+    }
+
+    /**
+     * @return the minimum of the aggregate column in the section of the header at the position.
+     */
+    public double getSectionMin(int headerPosition) {
+        return rowMap.getSectionMin(headerPosition);
+    }
+
+    /**
+     * @return the maximum of the aggregate column in the section of the header at the position.
+     */
+    public double getSectionMax(int headerPosition) {
+        return rowMap.getSectionMax(headerPosition);
+    }
+
+    /**
+     * @return an empty row map configured for this adapter.
+     */
+    SectionedRowMap createRowMap() {
+        SectionedRowMap map = new SectionedRowMap();
+        map.setAggregated(sectionAggregates, sectionAggregateColumnName != null);
+        map.setNested(parentHeaderColumnName != null);
+        return map;
+    }
+
+    /**
+     * Sets the extractor that creates the section headers from the values of the header column,
+     * which supports more column types than {@link #createHeaderFromColumnValue(Object)}. Set to
+     * null to use {@link #createHeaderFromColumnValue(Object)} again.
+     */
+    public void setSectionKeyExtractor(SectionKeyExtractor sectionKeyExtractor) {
+        this.sectionKeyExtractor = sectionKeyExtractor;
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    /**
+     * @return the extractor that creates the same headers as the default
+     * {@link #createHeaderFromColumnValue(Object)} for the column type, or null if the method is
+     * overridden.
+     */
+    SectionKeyExtractor getDefaultKeyExtractor(RealmFieldType fieldType) {
+        if (!isDefaultHeaderFactory) {
+            return null;
+        }
+        if (fieldType == RealmFieldType.STRING) {
+            return defaultStringExtractor;
+        } else if (fieldType == RealmFieldType.INTEGER) {
+            return defaultLongExtractor;
+        }
+        return null;
+    }
+
+    private boolean isDefaultHeaderFactory() {
+        try {
+            return getClass().getMethod("createHeaderFromColumnValue", Object.class)
+                    .getDeclaringClass() == RealmBasedRecyclerViewAdapter.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Groups the sections into a parent level, e.g. months into years. A parent header row is
+     * shown before the first section of each parent, see {@link #getHeaderLevel(int)}. The rows
+     * with the same parent header have to be contiguous, e.g. by sorting by the parent column
+     * first. Set the column to null to remove the parent level.
+     *
+     * @param parentKeyExtractor creates the parent headers, if null they are created like the
+     * section headers.
+     */
+    public void setParentSectionHeader(
+            String parentHeaderColumnName,
+            SectionKeyExtractor parentKeyExtractor) {
+        this.parentHeaderColumnName = parentHeaderColumnName;
+        this.parentKeyExtractor = parentKeyExtractor;
+        rowMap.setNested(parentHeaderColumnName != null);
+        if (pendingRowMap != null) {
+            pendingRowMap.setNested(parentHeaderColumnName != null);
+        }
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    /**
+     * @return the level of the header at the position: 0 for a parent header or for a section
+     * header without parent level, 1 for a section header below a parent, -1 for other rows.
+     */
+    public int getHeaderLevel(int position) {
+        if (!addSectionHeaders || position >= rowMap.size()) {
+            return -1;
+        }
+        return rowMap.getHeaderLevel(position);
+    }
+
+    CollectionHeaderReader createHeaderReader(
+            OrderedRealmCollection<? extends RealmModel> collection) {
+        CollectionHeaderReader parentReader = parentHeaderColumnName == null
+                ? null
+                : new CollectionHeaderReader(
+                        this, collection, parentHeaderColumnName, parentKeyExtractor, null);
+        return new CollectionHeaderReader(
+                this, collection, realmHeaderColumnName, sectionKeyExtractor, parentReader);
+    }
+
+    /**
+     * Set to true if all rows with the same header are next to each other, which is the case when
+     * the results are sorted by the header column and {@link #createHeaderFromColumnValue(Object)}
+     * keeps that order. The section starts are then found with a binary search instead of reading
+     * the header of every row.
+     */
+    public void setHeaderColumnSorted(boolean isHeaderColumnSorted) {
+        this.isHeaderColumnSorted = isHeaderColumnSorted;
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    /**
+     * Builds the section headers on a background thread instead of on the main thread within the
+     * change listener. The queryProvider has to return the same query as the adapter's data since
+     * it is run again on a worker thread, which also means that
+     * {@link #createHeaderFromColumnValue(Object)} is called from that thread.
+     *
+     * Until the new sections are swapped in, {@link #adapterData} is a snapshot of the results
+     * that matches the current sections. Set to null to build the sections on the main thread.
+     */
+    public void setBackgroundSectionQuery(RealmQueryProvider<T> queryProvider) {
+        if (queryProvider == null && sectionBuilder != null) {
+            sectionBuilder.quit();
+        }
+        this.sectionQueryProvider = queryProvider;
+        if (liveData != null) {
+            replaceAdapterData(liveData);
+        }
+    }
+
+    private boolean isBuildingSectionsInBackground() {
+        return addSectionHeaders && sectionQueryProvider != null && isLiveDataValid();
+    }
+
+    /**
+     * @param attempt the number of previous builds that were dropped because the worker saw
+     * another version.
+     */
+    private void buildSectionsInBackground(final int attempt) {
+        if (sectionBuilder == null) {
+            sectionBuilder = new BackgroundSectionBuilder<>(this);
+        }
+        final int generation = ++sectionBuildGeneration;
+        sectionBuilder.build(
+                getRealm(liveData).getConfiguration(),
+                sectionQueryProvider,
+                isHeaderColumnSorted,
+                new BackgroundSectionBuilder.Callback() {
+                    @Override
+                    public void onSectionsBuilt(
+                            SectionedRowMap builtRowMap,
+                            OsSharedRealm.VersionID versionID) {
+                        if (generation != sectionBuildGeneration || !isBuildingSectionsInBackground()) {
+                            return;
+                        }
+                        if (!liveData.isLoaded()) {
+                            // Built again once the async query of liveData is loaded.
+                            return;
+                        }
+                        if (!versionID.equals(getRealm(liveData).sharedRealm.getVersionID())) {
+                            // The worker and this thread saw different versions, try again. Under
+                            // constant writes, the sections are built on this thread instead.
+                            if (attempt < MAX_VERSION_RETRIES) {
+                                buildSectionsInBackground(attempt + 1);
+                            } else {
+                                SectionedRowMap mainRowMap = createRowMap();
+                                if (isHeaderColumnSorted) {
+                                    mainRowMap.rebuildSorted(liveData.size(), headerReader);
+                                } else {
+                                    mainRowMap.rebuild(liveData.size(), headerReader);
+                                }
+                                swapInRowMap(mainRowMap);
+                            }
+                            return;
+                        }
+                        swapInRowMap(builtRowMap);
+                    }
+                });
+    }
+
+    /**
+     * Shows the sections built for the current version of {@link #liveData}.
+     */
+    private void swapInRowMap(SectionedRowMap builtRowMap) {
+        builtRowMap.copyCollapsedSections(rowMap);
+        rowMap = builtRowMap;
+        clearProxyCache();
+        adapterData = liveData.createSnapshot();
+        notifyDataRefreshed();
+    }
+
     /**
      * Method that creates the header string that should be used. Override this method to have
      * a custom header.
@@ -440,6 +1722,10 @@ public abstract class RealmBasedRecyclerViewAdapter
 
     }
 
+    /**
+     * Returns a read-only view of the rows including the section headers. The adapter does not
+     * keep a {@link RowWrapper} per row, each one is created when it is accessed.
+     */
     public List<RowWrapper> getRowWrappers() {
         return rowWrappers;
     }
@@ -491,6 +1777,10 @@ public abstract class RealmBasedRecyclerViewAdapter
         return adapterData != null && adapterData.isValid();
     }
 
+    private boolean isLiveDataValid() {
+        return liveData != null && liveData.isValid();
+    }
+
     /**
      * Adds the LoadMore item.
      */
@@ -538,13 +1828,96 @@ public abstract class RealmBasedRecyclerViewAdapter
     /**
      * Called when an item has been dismissed by a swipe.
      *
-     * Only supported with type linearLayout and thus the adapterData can be accessed directly.
-     * If it is extended to LinearLayoutWithHeaders, rowWrappers will have to be used.
+     * Only supported with type linearLayout, without section headers. The row is deleted by its
+     * primary key in an async transaction, so the swipe doesn't wait for the write lock. With
+     * automatic updates the row is hidden right away until its deletion is notified, it is shown
+     * again if the transaction fails. Rows without a primary key are deleted in a transaction on
+     * this thread.
      */
     public void onItemSwipedDismiss(int position) {
-        BaseRealm realm = getRealm(adapterData);
+        if (addSectionHeaders) {
+            throw new IllegalStateException("Swipe to dismiss is not supported with section headers");
+        }
+        final T item = adapterData.get(toRealmIndex(position));
+        if (!RealmObject.isValid(item)) {
+            return;
+        }
+        Realm.Transaction transaction = createDeleteTransaction(item);
+        if (transaction == null) {
+            deleteNow(item);
+            return;
+        }
+        if (listener != null) {
+            if (frameDispatcher != null && frameDispatcher.isScheduled()) {
+                // The hidden rows are mapped to adapterData, the pending update replaces it.
+                frameDispatcher.flush();
+            }
+            int index = adapterData.indexOf(item);
+            if (index >= 0) {
+                position = hiddenRows.toPosition(index);
+                hiddenRows.hide(index);
+                notifyItemRemoved(position);
+            }
+        }
+        Realm realm = (Realm) PrimaryKeyReader.getRealm(item);
+        realm.executeTransactionAsync(transaction, new Realm.Transaction.OnError() {
+            @Override
+            public void onError(Throwable error) {
+                if (!isDataValid() || !RealmObject.isValid(item)) {
+                    return;
+                }
+                int index = adapterData.indexOf(item);
+                if (index >= 0 && hiddenRows.isHidden(index)) {
+                    notifyItemInserted(hiddenRows.show(index));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a transaction deleting the object by its primary key, which finds it again in the
+     * Realm of any thread, or null if the object has no supported primary key.
+     */
+    Realm.Transaction createDeleteTransaction(T item) {
+        if (!PrimaryKeyReader.hasSupportedPrimaryKey(item)) {
+            return null;
+        }
+        final Class<? extends RealmModel> modelClass = Util.getOriginalModelClass(item.getClass());
+        final String fieldName = primaryKeyReader.getFieldName(item);
+        final Object key = primaryKeyReader.readKey(item);
+        return new Realm.Transaction() {
+            @Override
+            public void execute(Realm backgroundRealm) {
+                RealmQuery<? extends RealmModel> query = backgroundRealm.where(modelClass);
+                if (key == null) {
+                    query.isNull(fieldName);
+                } else if (key instanceof String) {
+                    query.equalTo(fieldName, (String) key);
+                } else {
+                    query.equalTo(fieldName, (Long) key);
+                }
+                RealmModel object = query.findFirst();
+                if (object != null) {
+                    RealmObject.deleteFromRealm(object);
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the object in a transaction on this thread.
+     */
+    void deleteNow(T item) {
+        BaseRealm realm = PrimaryKeyReader.getRealm(item);
         realm.beginTransaction();
-        adapterData.deleteFromRealm(position);
+        RealmObject.deleteFromRealm(item);
         realm.commitTransaction();
     }
+
+    /**
+     * @return the index in adapterData of the row at the position, skipping the hidden rows.
+     */
+    private int toRealmIndex(int position) {
+        return hiddenRows.toIndex(position);
+    }
 }
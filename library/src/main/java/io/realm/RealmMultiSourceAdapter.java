@@ -0,0 +1,377 @@
+package io.realm;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.internal.Row;
+
+/**
+ * An adapter showing several {@link OrderedRealmCollection}s one after another, e.g. the pinned,
+ * today's and older rows of a list, each with its own query and change listener.
+ *
+ * The position passed to {@link #onBindRealmViewHolder(RealmViewHolder, int)} is the position in
+ * the whole list, {@link #getItem(int)}, {@link #getSourceAt(int)} and
+ * {@link #getIndexInSource(int)} resolve it. The changes of a source are notified as ranges
+ * offset by the first position of the source, without refreshing the other sources.
+ *
+ * While the updates are paused, see {@link #pauseUpdates()} and
+ * {@link #bindToLifecycle(androidx.lifecycle.LifecycleOwner)}, the rows are read from a snapshot
+ * of each source. On resume the rows of each source are replaced, one source at a time.
+ *
+ * Section headers aren't supported, neither are the proxy cache, move detection, diff updates,
+ * per frame coalescing and the large change set thresholds of the base adapter. Enabling one of
+ * them throws an {@link UnsupportedOperationException}.
+ */
+public abstract class RealmMultiSourceAdapter<T extends RealmModel, VH extends RealmViewHolder>
+        extends RealmBasedRecyclerViewAdapter<T, VH> {
+
+    private final List<OrderedRealmCollection<T>> sources;
+    // The collections the rows are read from, snapshots of the sources while suspended
+    private final List<OrderedRealmCollection<T>> shownSources;
+    private boolean sourcesSuspended;
+    private final List<SourceListener> sourceListeners;
+    private final SourcePrefixSums prefixSums;
+
+    public RealmMultiSourceAdapter(
+            Context context,
+            List<? extends OrderedRealmCollection<T>> sources) {
+        super(context, null, false, false);
+        this.sources = new ArrayList<OrderedRealmCollection<T>>(sources);
+        this.shownSources = new ArrayList<OrderedRealmCollection<T>>(sources);
+        this.sourceListeners = new ArrayList<SourceListener>(sources.size());
+        this.prefixSums = new SourcePrefixSums(sources.size());
+        for (int i = 0; i < this.sources.size(); i++) {
+            SourceListener sourceListener = new SourceListener(i);
+            sourceListeners.add(sourceListener);
+            OrderedRealmCollection<T> source = this.sources.get(i);
+            if (source != null) {
+                attachSource(i, source);
+            }
+        }
+    }
+
+    public int getSourceCount() {
+        return sources.size();
+    }
+
+    public OrderedRealmCollection<T> getSource(int source) {
+        return sources.get(source);
+    }
+
+    /**
+     * Replaces the collection of a source, e.g. after its query changed. Only the rows of that
+     * source are notified as removed and inserted. A null collection empties the source.
+     */
+    public void setSource(int source, OrderedRealmCollection<T> data) {
+        OrderedRealmCollection<T> previous = sources.get(source);
+        if (previous == data) {
+            return;
+        }
+        if (previous != null && previous.isValid() && !sourcesSuspended) {
+            removeSourceListener(previous, sourceListeners.get(source));
+        }
+        int start = prefixSums.startOf(source);
+        int previousSize = prefixSums.size(source);
+        sources.set(source, null);
+        shownSources.set(source, null);
+        prefixSums.setSize(source, 0);
+        if (previousSize > 0) {
+            notifyItemRangeRemoved(start, previousSize);
+        }
+        if (data != null) {
+            attachSource(source, data);
+            int size = prefixSums.size(source);
+            if (size > 0) {
+                notifyItemRangeInserted(start, size);
+            }
+        }
+    }
+
+    /**
+     * @return the position of the first row of the source.
+     */
+    public int getSourceStartPosition(int source) {
+        return prefixSums.startOf(source);
+    }
+
+    /**
+     * @return the source of the row at the position.
+     */
+    public int getSourceAt(int position) {
+        return prefixSums.sourceAt(position);
+    }
+
+    /**
+     * @return the index of the row at the position in its source.
+     */
+    public int getIndexInSource(int position) {
+        return position - prefixSums.startOf(prefixSums.sourceAt(position));
+    }
+
+    @Override
+    public T getItem(int position) {
+        int source = prefixSums.sourceAt(position);
+        return shownSources.get(source).get(position - prefixSums.startOf(source));
+    }
+
+    @Override
+    Row getRow(int position) {
+        int source = prefixSums.sourceAt(position);
+        return ColumnAccessor.rowAt(
+                shownSources.get(source), position - prefixSums.startOf(source));
+    }
+
+    @Override
+    boolean isBindable(int position) {
+        // A snapshot may still contain rows that were deleted since it was taken.
+        return !sourcesSuspended || RealmObject.isValid(getItem(position));
+    }
+
+    @Override
+    public Object getLastItem() {
+        return getItem(prefixSums.total() - 1);
+    }
+
+    @Override
+    public int getItemCount() {
+        // Without adapter data the base count only contains the footer and load more rows.
+        return prefixSums.total() + super.getItemCount();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return prefixSums.total() == 0;
+    }
+
+    /**
+     * Deletes the row by its primary key in an async transaction. The row is removed once the
+     * change of its source is notified, if the transaction fails the swiped row is rebound. Rows
+     * without a primary key are deleted in a transaction on this thread.
+     */
+    @Override
+    public void onItemSwipedDismiss(int position) {
+        final int source = prefixSums.sourceAt(position);
+        final OrderedRealmCollection<T> data = shownSources.get(source);
+        final T item = data.get(position - prefixSums.startOf(source));
+        if (!RealmObject.isValid(item)) {
+            return;
+        }
+        Realm.Transaction transaction = createDeleteTransaction(item);
+        if (transaction == null) {
+            deleteNow(item);
+            return;
+        }
+        Realm realm = (Realm) PrimaryKeyReader.getRealm(item);
+        realm.executeTransactionAsync(transaction, new Realm.Transaction.OnError() {
+            @Override
+            public void onError(Throwable error) {
+                int index = shownSources.get(source) == data ? data.indexOf(item) : -1;
+                if (index >= 0) {
+                    notifyItemChanged(prefixSums.startOf(source) + index);
+                }
+            }
+        });
+    }
+
+    @Override
+    void suspendUpdates() {
+        super.suspendUpdates();
+        if (sourcesSuspended) {
+            return;
+        }
+        sourcesSuspended = true;
+        for (int i = 0; i < sources.size(); i++) {
+            OrderedRealmCollection<T> source = sources.get(i);
+            if (source != null && source.isValid()) {
+                removeSourceListener(source, sourceListeners.get(i));
+                shownSources.set(i, source.createSnapshot());
+            }
+        }
+    }
+
+    @Override
+    void resumeUpdatesFromSnapshot() {
+        super.resumeUpdatesFromSnapshot();
+        if (!sourcesSuspended) {
+            return;
+        }
+        sourcesSuspended = false;
+        for (int i = 0; i < sources.size(); i++) {
+            OrderedRealmCollection<T> source = sources.get(i);
+            if (source == null || shownSources.get(i) == source) {
+                continue;
+            }
+            shownSources.set(i, source);
+            if (source.isValid()) {
+                addSourceListener(source, sourceListeners.get(i));
+            }
+            // The changes made in the meantime aren't known, the rows of the source are replaced.
+            notifySourceReplaced(i, source.isValid() ? source.size() : 0);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < sources.size(); i++) {
+            OrderedRealmCollection<T> source = sources.get(i);
+            if (source != null && source.isValid() && !sourcesSuspended) {
+                removeSourceListener(source, sourceListeners.get(i));
+            }
+            sources.set(i, null);
+            shownSources.set(i, null);
+            prefixSums.setSize(i, 0);
+        }
+        super.close();
+    }
+
+    @Override
+    public void setProxyCacheSize(int size) {
+        if (size > 0) {
+            throw new UnsupportedOperationException("The proxy cache is not supported with sources");
+        }
+        super.setProxyCacheSize(size);
+    }
+
+    @Override
+    public void setDetectMoves(boolean detectMoves) {
+        if (detectMoves) {
+            throw new UnsupportedOperationException("Move detection is not supported with sources");
+        }
+        super.setDetectMoves(false);
+    }
+
+    @Override
+    public void setDiffUpdates(boolean diffUpdates) {
+        if (diffUpdates) {
+            throw new UnsupportedOperationException("Diff updates are not supported with sources");
+        }
+        super.setDiffUpdates(false);
+    }
+
+    @Override
+    public void setCoalesceChangesPerFrame(boolean coalesceChangesPerFrame) {
+        if (coalesceChangesPerFrame) {
+            throw new UnsupportedOperationException(
+                    "Coalescing changes per frame is not supported with sources");
+        }
+        super.setCoalesceChangesPerFrame(false);
+    }
+
+    @Override
+    public void setLargeChangeSetThresholds(int maxAnimatedRowCount, int maxAnimatedRangeCount) {
+        if (maxAnimatedRowCount > 0 || maxAnimatedRangeCount > 0) {
+            throw new UnsupportedOperationException(
+                    "Large change set thresholds are not supported with sources");
+        }
+        super.setLargeChangeSetThresholds(maxAnimatedRowCount, maxAnimatedRangeCount);
+    }
+
+    private void attachSource(int source, @NonNull OrderedRealmCollection<T> data) {
+        sources.set(source, data);
+        prefixSums.setSize(source, data.isValid() ? data.size() : 0);
+        if (!sourcesSuspended) {
+            shownSources.set(source, data);
+            addSourceListener(data, sourceListeners.get(source));
+        } else {
+            shownSources.set(source, data.isValid() ? data.createSnapshot() : data);
+        }
+    }
+
+    private void onSourceChange(
+            int source,
+            OrderedRealmCollection<T> data,
+            OrderedCollectionChangeSet changeSet) {
+        if (sources.get(source) != data) {
+            return;
+        }
+        int size = data.isValid() ? data.size() : 0;
+        if (changeSet.getState() != OrderedCollectionChangeSet.State.UPDATE) {
+            // The first results of an async query or an error, the previous rows can't be mapped.
+            notifySourceReplaced(source, size);
+            return;
+        }
+
+        int start = prefixSums.startOf(source);
+        // Observers read the item count while they are notified, e.g. for the empty view.
+        prefixSums.setSize(source, size);
+
+        // Deletions are in old indexes and notified in reverse, insertions and changes in new ones.
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            OrderedCollectionChangeSet.Range range = deletions[i];
+            notifyItemRangeRemoved(start + range.startIndex, range.length);
+        }
+        for (OrderedCollectionChangeSet.Range range : changeSet.getInsertionRanges()) {
+            notifyItemRangeInserted(start + range.startIndex, range.length);
+        }
+        for (OrderedCollectionChangeSet.Range range : changeSet.getChangeRanges()) {
+            notifyItemRangeChanged(start + range.startIndex, range.length, getChangePayload());
+        }
+    }
+
+    /**
+     * Notifies all rows of the source as replaced by the rows of its new size.
+     */
+    private void notifySourceReplaced(int source, int size) {
+        int start = prefixSums.startOf(source);
+        int previousSize = prefixSums.size(source);
+        prefixSums.setSize(source, size);
+        if (previousSize == size) {
+            if (size > 0) {
+                notifyItemRangeChanged(start, size);
+            }
+            return;
+        }
+        if (previousSize > 0) {
+            notifyItemRangeRemoved(start, previousSize);
+        }
+        if (size > 0) {
+            notifyItemRangeInserted(start, size);
+        }
+    }
+
+    private class SourceListener
+            implements OrderedRealmCollectionChangeListener<OrderedRealmCollection<T>> {
+
+        private final int source;
+
+        SourceListener(int source) {
+            this.source = source;
+        }
+
+        @Override
+        public void onChange(OrderedRealmCollection<T> data, OrderedCollectionChangeSet changeSet) {
+            onSourceChange(source, data, changeSet);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addSourceListener(
+            OrderedRealmCollection<?> data,
+            OrderedRealmCollectionChangeListener listener) {
+        if (data instanceof RealmResults) {
+            ((RealmResults) data).addChangeListener(listener);
+        } else if (data instanceof RealmList) {
+            ((RealmList) data).addChangeListener(listener);
+        } else {
+            throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void removeSourceListener(
+            OrderedRealmCollection<?> data,
+            OrderedRealmCollectionChangeListener listener) {
+        if (data instanceof RealmResults) {
+            ((RealmResults) data).removeChangeListener(listener);
+        } else if (data instanceof RealmList) {
+            ((RealmList) data).removeChangeListener(listener);
+        } else {
+            throw new IllegalArgumentException("RealmCollection not supported: " + data.getClass());
+        }
+    }
+}
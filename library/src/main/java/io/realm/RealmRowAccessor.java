@@ -0,0 +1,98 @@
+package io.realm;
+
+import java.util.Date;
+
+import io.realm.internal.Row;
+
+/**
+ * Reads a declared set of fields of the rows of a {@link RealmBasedRecyclerViewAdapter} directly
+ * from the underlying row, without a proxy object.
+ *
+ * The column indexes of the fields are resolved once for the table of the rows and reused for
+ * all reads. Fields are addressed by their index in the list of field names the accessor was
+ * created with:
+ *
+ * <pre>
+ * RealmRowAccessor accessor = adapter.createRowAccessor("title", "count");
+ * ...
+ * accessor.moveTo(position);
+ * titleView.setText(accessor.getString(0));
+ * </pre>
+ *
+ * An accessor is confined to the thread of the adapter.
+ */
+public class RealmRowAccessor {
+
+    private final RealmBasedRecyclerViewAdapter<?, ?> adapter;
+    private final String[] fieldNames;
+    private final long[] columnIndexes;
+    private String className;
+    private Row row;
+
+    RealmRowAccessor(RealmBasedRecyclerViewAdapter<?, ?> adapter, String[] fieldNames) {
+        this.adapter = adapter;
+        this.fieldNames = fieldNames.clone();
+        this.columnIndexes = new long[fieldNames.length];
+    }
+
+    /**
+     * Moves the accessor to the row at the realm index, the same index as for
+     * {@link RealmBasedRecyclerViewAdapter#getItem(int)}. That is the position passed to
+     * {@link RealmBasedRecyclerViewAdapter#onBindRealmViewHolder} unless section headers are
+     * shown without sticky headers, the position then includes the headers and is mapped by
+     * {@link RealmBasedRecyclerViewAdapter#getRowWrappers()}.
+     *
+     * @return false if the row has been deleted since the adapter's data was taken.
+     */
+    public boolean moveTo(int realmIndex) {
+        row = adapter.getRow(realmIndex);
+        if (!row.isValid()) {
+            return false;
+        }
+        String rowClassName = row.getTable().getClassName();
+        if (!rowClassName.equals(className)) {
+            for (int i = 0; i < fieldNames.length; i++) {
+                long columnIndex = row.getColumnIndex(fieldNames[i]);
+                if (columnIndex < 0) {
+                    throw new IllegalArgumentException(
+                            "Field not found in " + rowClassName + ": " + fieldNames[i]);
+                }
+                columnIndexes[i] = columnIndex;
+            }
+            className = rowClassName;
+        }
+        return true;
+    }
+
+    public boolean isNull(int field) {
+        return row.isNull(columnIndexes[field]);
+    }
+
+    public String getString(int field) {
+        return row.getString(columnIndexes[field]);
+    }
+
+    public long getLong(int field) {
+        return row.getLong(columnIndexes[field]);
+    }
+
+    public double getDouble(int field) {
+        return row.getDouble(columnIndexes[field]);
+    }
+
+    public float getFloat(int field) {
+        return row.getFloat(columnIndexes[field]);
+    }
+
+    public boolean getBoolean(int field) {
+        return row.getBoolean(columnIndexes[field]);
+    }
+
+    public Date getDate(int field) {
+        return row.getDate(columnIndexes[field]);
+    }
+
+    public byte[] getBinary(int field) {
+        return row.getBinaryByteArray(columnIndexes[field]);
+    }
+}
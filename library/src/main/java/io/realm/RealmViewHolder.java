@@ -15,6 +15,10 @@ public class RealmViewHolder extends RecyclerView.ViewHolder {
 
     public LoadMoreListItemView loadMoreView;
 
+    // The object the holder is bound to while field change payloads are enabled
+    RealmModel boundObject;
+    RealmObjectChangeListener<RealmModel> fieldChangeListener;
+
     public RealmViewHolder(View itemView) {
         super(itemView);
     }
@@ -0,0 +1,96 @@
+package io.realm;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import io.realm.internal.Row;
+
+/**
+ * Hashes the values of all scalar columns of rows of the same table. Links are hashed by their
+ * target row, lists are not part of the hash.
+ *
+ * The hashed columns and their types are resolved once from the first row after
+ * {@link #reset()}, reading a row then only reads its values.
+ */
+class RowHasher {
+
+    private long[] columns;
+    private RealmFieldType[] types;
+    private boolean resolved;
+
+    /**
+     * Resolves the columns again for the next row, e.g. for another collection.
+     */
+    void reset() {
+        resolved = false;
+    }
+
+    long hash(Row row) {
+        if (!resolved) {
+            resolve(row);
+        }
+        long hash = 17;
+        for (int i = 0; i < columns.length; i++) {
+            long column = columns[i];
+            long value;
+            switch (types[i]) {
+                case INTEGER:
+                    value = row.isNull(column) ? 0 : row.getLong(column);
+                    break;
+                case BOOLEAN:
+                    value = row.isNull(column) ? 0 : (row.getBoolean(column) ? 1 : 2);
+                    break;
+                case FLOAT:
+                    value = row.isNull(column) ? 0 : Float.floatToIntBits(row.getFloat(column));
+                    break;
+                case DOUBLE:
+                    value = row.isNull(column) ? 0 : Double.doubleToLongBits(row.getDouble(column));
+                    break;
+                case STRING:
+                    value = PrimaryKeyReader.hash(row.getString(column));
+                    break;
+                case DATE:
+                    Date date = row.getDate(column);
+                    value = date == null ? 0 : date.getTime();
+                    break;
+                case BINARY:
+                    value = Arrays.hashCode(row.getBinaryByteArray(column));
+                    break;
+                default:
+                    value = row.isNullLink(column) ? -1 : row.getLink(column);
+                    break;
+            }
+            hash = hash * 31 + value;
+        }
+        return hash;
+    }
+
+    private void resolve(Row row) {
+        int columnCount = (int) row.getColumnCount();
+        long[] hashedColumns = new long[columnCount];
+        RealmFieldType[] hashedTypes = new RealmFieldType[columnCount];
+        int count = 0;
+        for (int column = 0; column < columnCount; column++) {
+            RealmFieldType type = row.getColumnType(column);
+            switch (type) {
+                case INTEGER:
+                case BOOLEAN:
+                case FLOAT:
+                case DOUBLE:
+                case STRING:
+                case DATE:
+                case BINARY:
+                case OBJECT:
+                    hashedColumns[count] = column;
+                    hashedTypes[count] = type;
+                    count++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        columns = Arrays.copyOf(hashedColumns, count);
+        types = Arrays.copyOf(hashedTypes, count);
+        resolved = true;
+    }
+}
@@ -0,0 +1,184 @@
+package io.realm;
+
+import java.util.Arrays;
+
+/**
+ * Per section aggregates of a {@link SectionedRowMap}: the row count and optionally the sum,
+ * minimum and maximum of a numeric column.
+ *
+ * The value of each row is read once when the row is inserted or changed and kept in a realm
+ * index ordered array, so the rows of a section are contiguous in it. The aggregates of a section
+ * are cached and only recomputed from that array, never from Realm, after a change touched the
+ * section. Touched sections are also remembered until {@link #clearDirty()} so that their headers
+ * can be rebound.
+ */
+class SectionAggregates {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean hasValues;
+
+    // Row values by realm index
+    private double[] rowValues;
+    private int rowCount;
+
+    // Cached aggregates by section
+    private double[] sectionSum = new double[INITIAL_CAPACITY];
+    private double[] sectionMin = new double[INITIAL_CAPACITY];
+    private double[] sectionMax = new double[INITIAL_CAPACITY];
+    private boolean[] sectionValid = new boolean[INITIAL_CAPACITY];
+    private boolean[] sectionDirty = new boolean[INITIAL_CAPACITY];
+    private int sectionCount;
+
+    SectionAggregates(boolean hasValues) {
+        this.hasValues = hasValues;
+        this.rowValues = hasValues ? new double[INITIAL_CAPACITY] : null;
+    }
+
+    boolean hasValues() {
+        return hasValues;
+    }
+
+    void clear() {
+        rowCount = 0;
+        sectionCount = 0;
+    }
+
+    void copyFrom(SectionAggregates other) {
+        if (hasValues) {
+            if (rowValues.length < other.rowCount) {
+                rowValues = new double[other.rowValues.length];
+            }
+            System.arraycopy(other.rowValues, 0, rowValues, 0, other.rowCount);
+        }
+        rowCount = other.rowCount;
+        ensureSectionCapacity(other.sectionCount);
+        System.arraycopy(other.sectionSum, 0, sectionSum, 0, other.sectionCount);
+        System.arraycopy(other.sectionMin, 0, sectionMin, 0, other.sectionCount);
+        System.arraycopy(other.sectionMax, 0, sectionMax, 0, other.sectionCount);
+        System.arraycopy(other.sectionValid, 0, sectionValid, 0, other.sectionCount);
+        System.arraycopy(other.sectionDirty, 0, sectionDirty, 0, other.sectionCount);
+        sectionCount = other.sectionCount;
+    }
+
+    void rowsInserted(int start, int count, SectionedRowMap.HeaderReader reader) {
+        if (!hasValues) {
+            rowCount += count;
+            return;
+        }
+        if (rowCount + count > rowValues.length) {
+            rowValues = Arrays.copyOf(rowValues, Math.max(rowCount + count, rowValues.length * 2));
+        }
+        System.arraycopy(rowValues, start, rowValues, start + count, rowCount - start);
+        for (int i = start; i < start + count; i++) {
+            rowValues[i] = reader.readValue(i);
+        }
+        rowCount += count;
+    }
+
+    void rowsRemoved(int start, int count) {
+        if (hasValues) {
+            System.arraycopy(rowValues, start + count, rowValues, start, rowCount - start - count);
+        }
+        rowCount -= count;
+    }
+
+    void rowChanged(int index, SectionedRowMap.HeaderReader reader) {
+        if (hasValues) {
+            rowValues[index] = reader.readValue(index);
+        }
+    }
+
+    void sectionInserted(int section) {
+        ensureSectionCapacity(sectionCount + 1);
+        int tail = sectionCount - section;
+        System.arraycopy(sectionSum, section, sectionSum, section + 1, tail);
+        System.arraycopy(sectionMin, section, sectionMin, section + 1, tail);
+        System.arraycopy(sectionMax, section, sectionMax, section + 1, tail);
+        System.arraycopy(sectionValid, section, sectionValid, section + 1, tail);
+        System.arraycopy(sectionDirty, section, sectionDirty, section + 1, tail);
+        sectionCount++;
+        // A new header is bound anyway, it doesn't have to be rebound.
+        sectionValid[section] = false;
+        sectionDirty[section] = false;
+    }
+
+    void sectionRemoved(int section) {
+        int tail = sectionCount - section - 1;
+        System.arraycopy(sectionSum, section + 1, sectionSum, section, tail);
+        System.arraycopy(sectionMin, section + 1, sectionMin, section, tail);
+        System.arraycopy(sectionMax, section + 1, sectionMax, section, tail);
+        System.arraycopy(sectionValid, section + 1, sectionValid, section, tail);
+        System.arraycopy(sectionDirty, section + 1, sectionDirty, section, tail);
+        sectionCount--;
+    }
+
+    /**
+     * Marks the aggregates of the section as changed.
+     */
+    void sectionTouched(int section) {
+        sectionValid[section] = false;
+        sectionDirty[section] = true;
+    }
+
+    boolean isDirty(int section) {
+        return sectionDirty[section];
+    }
+
+    void clearDirty() {
+        Arrays.fill(sectionDirty, 0, sectionCount, false);
+    }
+
+    double getSum(int section, int realmStart, int realmEnd) {
+        ensureValid(section, realmStart, realmEnd);
+        return sectionSum[section];
+    }
+
+    double getMin(int section, int realmStart, int realmEnd) {
+        ensureValid(section, realmStart, realmEnd);
+        return sectionMin[section];
+    }
+
+    double getMax(int section, int realmStart, int realmEnd) {
+        ensureValid(section, realmStart, realmEnd);
+        return sectionMax[section];
+    }
+
+    private void ensureValid(int section, int realmStart, int realmEnd) {
+        if (!hasValues) {
+            throw new IllegalStateException("No aggregate column set");
+        }
+        if (sectionValid[section]) {
+            return;
+        }
+        double sum = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        for (int i = realmStart; i < realmEnd; i++) {
+            double value = rowValues[i];
+            sum += value;
+            if (i == realmStart || value < min) {
+                min = value;
+            }
+            if (i == realmStart || value > max) {
+                max = value;
+            }
+        }
+        sectionSum[section] = sum;
+        sectionMin[section] = min;
+        sectionMax[section] = max;
+        sectionValid[section] = true;
+    }
+
+    private void ensureSectionCapacity(int capacity) {
+        if (capacity <= sectionSum.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, sectionSum.length * 2);
+        sectionSum = Arrays.copyOf(sectionSum, newCapacity);
+        sectionMin = Arrays.copyOf(sectionMin, newCapacity);
+        sectionMax = Arrays.copyOf(sectionMax, newCapacity);
+        sectionValid = Arrays.copyOf(sectionValid, newCapacity);
+        sectionDirty = Arrays.copyOf(sectionDirty, newCapacity);
+    }
+}
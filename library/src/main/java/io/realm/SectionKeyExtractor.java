@@ -0,0 +1,309 @@
+package io.realm;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import io.realm.internal.Row;
+
+/**
+ * Maps the value of the header column of a row to the label of its section.
+ *
+ * The column value is read as a primitive and reduced to a long section key, e.g. the start of
+ * the day of a date. The labels are cached in a fixed number of slots, direct mapped by a hash of
+ * the key, so reading the header of a row neither boxes the value nor builds a string as long as
+ * its key wasn't replaced in its slot by another one. Consecutive rows are compared by their key
+ * and share the same label instance. Use one of the specializations below and override
+ * its getKey and createLabel methods to customize the sections.
+ *
+ * The cache is synchronized as the headers may be read from a background thread, see
+ * {@link RealmBasedRecyclerViewAdapter#setBackgroundSectionQuery}.
+ */
+public abstract class SectionKeyExtractor {
+
+    private static final int LABEL_CACHE_BITS = 9;
+
+    private final long[] labelKeys = new long[1 << LABEL_CACHE_BITS];
+    private final String[] labels = new String[1 << LABEL_CACHE_BITS];
+    private String nullLabel;
+    // Incremented by clearLabels(), so that readers drop the labels they hold on to
+    private volatile int labelGeneration;
+
+    SectionKeyExtractor() {
+    }
+
+    abstract boolean supports(RealmFieldType fieldType);
+
+    abstract long readKey(Row row, long columnIndex, RealmFieldType fieldType);
+
+    abstract String createLabelForKey(long key);
+
+    /**
+     * Creates the label of the section of rows whose header column is null.
+     */
+    protected String createNullLabel() {
+        return "";
+    }
+
+    /**
+     * Drops the cached labels, e.g. after the locale changed.
+     */
+    public synchronized void clearLabels() {
+        Arrays.fill(labels, null);
+        nullLabel = null;
+        labelGeneration++;
+    }
+
+    final int getLabelGeneration() {
+        return labelGeneration;
+    }
+
+    final synchronized String getNullLabel() {
+        if (nullLabel == null) {
+            nullLabel = createNullLabel();
+        }
+        return nullLabel;
+    }
+
+    /**
+     * @return the cached label of the key, equal keys share one label instance while the key
+     * stays in its slot.
+     */
+    final synchronized String getLabel(long key) {
+        // Fibonacci hashing, which also spreads keys that are multiples of a large step like
+        // the starts of days.
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - LABEL_CACHE_BITS));
+        String label = labels[slot];
+        if (label == null || labelKeys[slot] != key) {
+            label = createLabelForKey(key);
+            labels[slot] = label;
+            labelKeys[slot] = key;
+        }
+        return label;
+    }
+
+    /**
+     * Sections by the first character of a string column, the default for string header columns.
+     */
+    public static class StringExtractor extends SectionKeyExtractor {
+
+        @Override
+        final boolean supports(RealmFieldType fieldType) {
+            return fieldType == RealmFieldType.STRING;
+        }
+
+        @Override
+        final long readKey(Row row, long columnIndex, RealmFieldType fieldType) {
+            return getKey(row.getString(columnIndex));
+        }
+
+        @Override
+        final String createLabelForKey(long key) {
+            return createLabel(key);
+        }
+
+        /**
+         * @return the key of the section of the value, its first code point by default or -1 if
+         * it is empty.
+         */
+        protected long getKey(String value) {
+            return value.isEmpty() ? -1 : value.codePointAt(0);
+        }
+
+        protected String createLabel(long key) {
+            return key == -1 ? "" : new String(Character.toChars((int) key));
+        }
+    }
+
+    /**
+     * Sections by the value of an integer column, the default for integer header columns.
+     */
+    public static class LongExtractor extends SectionKeyExtractor {
+
+        @Override
+        final boolean supports(RealmFieldType fieldType) {
+            return fieldType == RealmFieldType.INTEGER;
+        }
+
+        @Override
+        final long readKey(Row row, long columnIndex, RealmFieldType fieldType) {
+            return getKey(row.getLong(columnIndex));
+        }
+
+        @Override
+        final String createLabelForKey(long key) {
+            return createLabel(key);
+        }
+
+        /**
+         * @return the key of the section of the value, the value itself by default.
+         */
+        protected long getKey(long value) {
+            return value;
+        }
+
+        protected String createLabel(long key) {
+            return Long.toString(key);
+        }
+    }
+
+    /**
+     * Sections by the value of a double or float column, bucketed into ranges of the bucket size.
+     */
+    public static class DoubleExtractor extends SectionKeyExtractor {
+
+        private final double bucketSize;
+
+        public DoubleExtractor(double bucketSize) {
+            if (bucketSize <= 0) {
+                throw new IllegalArgumentException("bucketSize must be positive");
+            }
+            this.bucketSize = bucketSize;
+        }
+
+        @Override
+        final boolean supports(RealmFieldType fieldType) {
+            return fieldType == RealmFieldType.DOUBLE || fieldType == RealmFieldType.FLOAT;
+        }
+
+        @Override
+        final long readKey(Row row, long columnIndex, RealmFieldType fieldType) {
+            if (fieldType == RealmFieldType.FLOAT) {
+                return getKey(row.getFloat(columnIndex));
+            }
+            return getKey(row.getDouble(columnIndex));
+        }
+
+        @Override
+        final String createLabelForKey(long key) {
+            return createLabel(key);
+        }
+
+        /**
+         * @return the key of the section of the value, the index of its bucket by default.
+         */
+        protected long getKey(double value) {
+            return (long) Math.floor(value / bucketSize);
+        }
+
+        /**
+         * @return the label of the section, the lower bound of the bucket by default.
+         */
+        protected String createLabel(long key) {
+            return Double.toString(key * bucketSize);
+        }
+    }
+
+    /**
+     * Sections by a date column, bucketed by day, week, month or year in the default time zone.
+     */
+    public static class DateExtractor extends SectionKeyExtractor {
+
+        public enum Bucket {
+            DAY,
+            WEEK,
+            MONTH,
+            YEAR
+        }
+
+        private final Bucket bucket;
+        // Reused for every row, guarded by the lock of the extractor
+        private final Calendar calendar = Calendar.getInstance();
+        private DateFormat dateFormat;
+
+        public DateExtractor(Bucket bucket) {
+            if (bucket == null) {
+                throw new IllegalArgumentException("bucket cannot be null");
+            }
+            this.bucket = bucket;
+        }
+
+        @Override
+        final boolean supports(RealmFieldType fieldType) {
+            return fieldType == RealmFieldType.DATE;
+        }
+
+        @Override
+        final long readKey(Row row, long columnIndex, RealmFieldType fieldType) {
+            long timeMillis = row.getDate(columnIndex).getTime();
+            synchronized (this) {
+                return getKey(timeMillis);
+            }
+        }
+
+        @Override
+        final String createLabelForKey(long key) {
+            return createLabel(key);
+        }
+
+        /**
+         * @return the start of the bucket of the time in milliseconds.
+         */
+        protected long getKey(long timeMillis) {
+            calendar.setTimeInMillis(timeMillis);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            if (bucket == Bucket.WEEK) {
+                calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+            } else if (bucket == Bucket.MONTH) {
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+            } else if (bucket == Bucket.YEAR) {
+                calendar.set(Calendar.DAY_OF_YEAR, 1);
+            }
+            return calendar.getTimeInMillis();
+        }
+
+        /**
+         * @return the label of the bucket starting at the given time in milliseconds.
+         */
+        protected String createLabel(long bucketStartMillis) {
+            if (dateFormat == null) {
+                if (bucket == Bucket.YEAR) {
+                    dateFormat = new SimpleDateFormat("yyyy");
+                } else if (bucket == Bucket.MONTH) {
+                    dateFormat = new SimpleDateFormat("MMMM yyyy");
+                } else {
+                    dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM);
+                }
+            }
+            return dateFormat.format(new Date(bucketStartMillis));
+        }
+    }
+
+    /**
+     * Sections by a boolean column.
+     */
+    public static class BooleanExtractor extends SectionKeyExtractor {
+
+        private final String trueLabel;
+        private final String falseLabel;
+
+        public BooleanExtractor(String trueLabel, String falseLabel) {
+            this.trueLabel = trueLabel;
+            this.falseLabel = falseLabel;
+        }
+
+        @Override
+        final boolean supports(RealmFieldType fieldType) {
+            return fieldType == RealmFieldType.BOOLEAN;
+        }
+
+        @Override
+        final long readKey(Row row, long columnIndex, RealmFieldType fieldType) {
+            return row.getBoolean(columnIndex) ? 1 : 0;
+        }
+
+        @Override
+        final String createLabelForKey(long key) {
+            return createLabel(key == 1);
+        }
+
+        protected String createLabel(boolean value) {
+            return value ? trueLabel : falseLabel;
+        }
+    }
+}
@@ -0,0 +1,879 @@
+package io.realm;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Maps the adapter positions of a sectioned list to realm indexes and section headers.
+ *
+ * The sections are stored as parallel int arrays (the realm index of their first row and the id
+ * of their header) and the headers are kept once each in a deduplicated header table. Position
+ * lookups binary search the first position of each section, an array with one int per section
+ * that is rebuilt lazily in O(section count) after the sections changed. No per row state is
+ * kept, so a rebuild does not allocate anything per row.
+ *
+ * The map can be updated incrementally from an {@link OrderedCollectionChangeSet}: only the
+ * headers of inserted or changed rows are read and the matching {@link ListUpdateCallback}
+ * notifications are emitted, including the header rows that are added or removed along the way.
+ *
+ * Sections can be nested into a parent level. Each section then also stores the id of its parent
+ * header and a parent header row is shown before every section whose parent differs from the
+ * one of the previous section. Sections are only equal if both their headers and their parent
+ * headers are equal.
+ *
+ * Optionally {@link SectionAggregates} are kept up to date along the way. The headers of the
+ * sections whose aggregates changed are notified as changed at the end of each change set.
+ *
+ * Sections can be collapsed, which hides their rows but keeps the header. The collapsed state is
+ * kept per header, and per parent header when nested, so that it survives rebuilds and is shared
+ * by all sections with those headers.
+ * Hidden rows are skipped when the positions are computed and are not notified.
+ *
+ * Adjacent sections never share the same header.
+ */
+class SectionedRowMap {
+
+    /**
+     * Reads the headers and the aggregated value of the row at a realm index of the current
+     * collection.
+     */
+    interface HeaderReader {
+        String readHeader(int realmIndex);
+
+        String readParentHeader(int realmIndex);
+
+        double readValue(int realmIndex);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Sections
+    private int[] sectionRealmStart = new int[INITIAL_CAPACITY];
+    private int[] sectionHeaderId = new int[INITIAL_CAPACITY];
+    private int sectionCount;
+    private int realmCount;
+
+    // Parent level, only used when nested
+    private boolean nested;
+    private int[] sectionParentId = new int[INITIAL_CAPACITY];
+    private boolean[] sectionStartsParent = new boolean[INITIAL_CAPACITY];
+
+    // Deduplicated header table, shared by both levels
+    private String[] headerTable = new String[INITIAL_CAPACITY];
+    private final HashMap<String, Integer> headerIds = new HashMap<>();
+    private int headerTableSize;
+
+    // Collapsed sections, by headers and by section
+    private final HashSet<CollapsedKey> collapsedSections = new HashSet<>();
+    private boolean[] sectionCollapsed = new boolean[INITIAL_CAPACITY];
+
+    // Position lookup, the first position of each section followed by the size
+    private int[] sectionPosition = new int[INITIAL_CAPACITY + 1];
+    private boolean lookupValid;
+
+    private SectionAggregates aggregates;
+
+    /**
+     * Enables or disables the per section aggregates, the map has to be rebuilt afterwards.
+     *
+     * @param hasValues true to aggregate the values read by {@link HeaderReader#readValue(int)}
+     * in addition to the row counts.
+     */
+    void setAggregated(boolean aggregated, boolean hasValues) {
+        aggregates = aggregated ? new SectionAggregates(hasValues) : null;
+    }
+
+    /**
+     * Enables or disables the parent level read by {@link HeaderReader#readParentHeader(int)},
+     * the map has to be rebuilt afterwards.
+     */
+    void setNested(boolean nested) {
+        this.nested = nested;
+    }
+
+    /**
+     * Rebuilds the map from scratch by reading the header of every row.
+     */
+    void rebuild(int count, HeaderReader reader) {
+        clear();
+        realmCount = count;
+        String lastHeader = null;
+        String lastParent = null;
+        for (int i = 0; i < count; i++) {
+            String header = reader.readHeader(i);
+            String parent = nested ? reader.readParentHeader(i) : null;
+            if (sectionCount == 0
+                    || !equals(lastHeader, header)
+                    || !equals(lastParent, parent)) {
+                insertSection(sectionCount, i, header, parent);
+                lastHeader = header;
+                lastParent = parent;
+            }
+        }
+        if (aggregates != null) {
+            aggregates.rowsInserted(0, count, reader);
+        }
+    }
+
+    /**
+     * Rebuilds the map from scratch for a collection in which all rows with the same header are
+     * contiguous, e.g. results sorted by the header column. The end of each section is found by
+     * galloping and a binary search, so only O(sections * log n) headers are read.
+     */
+    void rebuildSorted(int count, HeaderReader reader) {
+        clear();
+        realmCount = count;
+        int start = 0;
+        while (start < count) {
+            String header = reader.readHeader(start);
+            String parent = nested ? reader.readParentHeader(start) : null;
+            // low is the last index known to be in the section, high the first known to be out.
+            int low = start;
+            int step = 1;
+            int high = start + step;
+            while (high < count && hasHeaders(reader, high, header, parent)) {
+                low = high;
+                step <<= 1;
+                high = start + step;
+            }
+            high = Math.min(high, count);
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if (hasHeaders(reader, mid, header, parent)) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            insertSection(sectionCount, start, header, parent);
+            start = high;
+        }
+        if (aggregates != null) {
+            // The values of all rows are needed, not only of the section boundaries.
+            aggregates.rowsInserted(0, count, reader);
+        }
+    }
+
+    private boolean hasHeaders(HeaderReader reader, int realmIndex, String header, String parent) {
+        return equals(reader.readHeader(realmIndex), header)
+                && (!nested || equals(reader.readParentHeader(realmIndex), parent));
+    }
+
+    /**
+     * Makes this map a copy of the other one. The arrays are reused when they are large enough.
+     */
+    void copyFrom(SectionedRowMap other) {
+        if (sectionRealmStart.length < other.sectionCount) {
+            sectionRealmStart = new int[other.sectionRealmStart.length];
+            sectionHeaderId = new int[other.sectionHeaderId.length];
+            sectionParentId = new int[other.sectionParentId.length];
+            sectionStartsParent = new boolean[other.sectionStartsParent.length];
+            sectionCollapsed = new boolean[other.sectionCollapsed.length];
+        }
+        System.arraycopy(other.sectionRealmStart, 0, sectionRealmStart, 0, other.sectionCount);
+        System.arraycopy(other.sectionHeaderId, 0, sectionHeaderId, 0, other.sectionCount);
+        System.arraycopy(other.sectionParentId, 0, sectionParentId, 0, other.sectionCount);
+        System.arraycopy(
+                other.sectionStartsParent, 0, sectionStartsParent, 0, other.sectionCount);
+        System.arraycopy(other.sectionCollapsed, 0, sectionCollapsed, 0, other.sectionCount);
+        sectionCount = other.sectionCount;
+        realmCount = other.realmCount;
+        nested = other.nested;
+
+        if (headerTable.length < other.headerTableSize) {
+            headerTable = new String[other.headerTable.length];
+        }
+        Arrays.fill(headerTable, 0, headerTableSize, null);
+        System.arraycopy(other.headerTable, 0, headerTable, 0, other.headerTableSize);
+        headerTableSize = other.headerTableSize;
+        headerIds.clear();
+        headerIds.putAll(other.headerIds);
+        collapsedSections.clear();
+        collapsedSections.addAll(other.collapsedSections);
+
+        if (other.aggregates == null) {
+            aggregates = null;
+        } else {
+            if (aggregates == null || aggregates.hasValues() != other.aggregates.hasValues()) {
+                aggregates = new SectionAggregates(other.aggregates.hasValues());
+            }
+            aggregates.copyFrom(other.aggregates);
+        }
+        lookupValid = false;
+    }
+
+    /**
+     * Takes over the collapsed sections of the other map, e.g. when it is replaced by this one.
+     */
+    void copyCollapsedSections(SectionedRowMap other) {
+        collapsedSections.clear();
+        collapsedSections.addAll(other.collapsedSections);
+        for (int section = 0; section < sectionCount; section++) {
+            sectionCollapsed[section] = collapsedSections.contains(getCollapsedKey(section));
+        }
+        lookupValid = false;
+    }
+
+    void clear() {
+        sectionCount = 0;
+        realmCount = 0;
+        Arrays.fill(headerTable, 0, headerTableSize, null);
+        headerTableSize = 0;
+        headerIds.clear();
+        if (aggregates != null) {
+            aggregates.clear();
+        }
+        lookupValid = false;
+    }
+
+    /**
+     * @return the number of visible rows, headers included.
+     */
+    int size() {
+        return getSectionPosition(sectionCount);
+    }
+
+    int getRealmCount() {
+        return realmCount;
+    }
+
+    boolean isHeader(int position) {
+        int section = sectionAtPosition(position);
+        return position - sectionPosition[section] < getHeaderRows(section);
+    }
+
+    /**
+     * @return true if the position is the header of a section, not of a parent.
+     */
+    boolean isSectionHeader(int position) {
+        int section = sectionAtPosition(position);
+        return position - sectionPosition[section] == getHeaderRows(section) - 1;
+    }
+
+    /**
+     * @return the level of the header at the position, 0 for the top level and 1 for the
+     * sections of a nested map, or -1 if the position is not a header.
+     */
+    int getHeaderLevel(int position) {
+        int section = sectionAtPosition(position);
+        int offset = position - sectionPosition[section];
+        if (offset >= getHeaderRows(section)) {
+            return -1;
+        }
+        if (!nested) {
+            return 0;
+        }
+        return sectionStartsParent[section] && offset == 0 ? 0 : 1;
+    }
+
+    /**
+     * @return the realm index of the row at the position or -1 if it is a header.
+     */
+    int getRealmIndex(int position) {
+        int section = sectionAtPosition(position);
+        int offset = position - sectionPosition[section] - getHeaderRows(section);
+        return offset < 0 ? -1 : sectionRealmStart[section] + offset;
+    }
+
+    /**
+     * @return the position of the header of the section the position belongs to. A parent
+     * header is the first position of its own.
+     */
+    int getSectionFirstPosition(int position) {
+        int section = sectionAtPosition(position);
+        if (sectionStartsParent[section] && position == sectionPosition[section]) {
+            return position;
+        }
+        return sectionPosition[section] + getHeaderRows(section) - 1;
+    }
+
+    /**
+     * @return the realm index of the first row of the section the position belongs to. For a
+     * parent header that is the first row of its first section.
+     */
+    int getSectionRealmStart(int position) {
+        return sectionRealmStart[sectionAtPosition(position)];
+    }
+
+    /**
+     * @return the header if the position is a header row of either level, null otherwise.
+     */
+    String getHeader(int position) {
+        int section = sectionAtPosition(position);
+        int offset = position - sectionPosition[section];
+        int headerRows = getHeaderRows(section);
+        if (offset >= headerRows) {
+            return null;
+        }
+        if (offset < headerRows - 1) {
+            return headerTable[sectionParentId[section]];
+        }
+        return getSectionHeader(section);
+    }
+
+    /**
+     * @return the position of a realm index or -1 if its section is collapsed.
+     */
+    int getPosition(int realmIndex) {
+        int section = sectionForRealmIndex(realmIndex);
+        if (isCollapsed(section)) {
+            return -1;
+        }
+        return getHeaderPosition(section) + 1 + realmIndex - sectionRealmStart[section];
+    }
+
+    /**
+     * @return true if the section of the header at the position is collapsed.
+     */
+    boolean isSectionCollapsed(int headerPosition) {
+        return isCollapsed(sectionAtHeader(headerPosition));
+    }
+
+    /**
+     * @return the number of rows of the section of the header at the position, including the
+     * rows hidden in a collapsed section.
+     */
+    int getSectionRowCount(int headerPosition) {
+        return getSectionSize(sectionAtHeader(headerPosition));
+    }
+
+    double getSectionSum(int headerPosition) {
+        int section = getAggregatedSection(headerPosition);
+        return aggregates.getSum(section, sectionRealmStart[section], getSectionEnd(section));
+    }
+
+    double getSectionMin(int headerPosition) {
+        int section = getAggregatedSection(headerPosition);
+        return aggregates.getMin(section, sectionRealmStart[section], getSectionEnd(section));
+    }
+
+    double getSectionMax(int headerPosition) {
+        int section = getAggregatedSection(headerPosition);
+        return aggregates.getMax(section, sectionRealmStart[section], getSectionEnd(section));
+    }
+
+    private int getAggregatedSection(int headerPosition) {
+        if (aggregates == null) {
+            throw new IllegalStateException("Section aggregates are not enabled");
+        }
+        return sectionAtHeader(headerPosition);
+    }
+
+    /**
+     * Collapses or expands the section of the header at the position and all other sections with
+     * the same header, and the same parent header when nested. The rows that are hidden or shown
+     * are notified as a single range per section, the positions are remapped in O(section count)
+     * without reading any header.
+     *
+     * @return false if the sections already were in that state.
+     * @throws IllegalArgumentException if the position is not a section header.
+     */
+    boolean setSectionCollapsed(
+            int headerPosition,
+            boolean collapsed,
+            ListUpdateCallback callback) {
+        int toggled = sectionAtHeader(headerPosition);
+        int headerId = sectionHeaderId[toggled];
+        int parentId = sectionParentId[toggled];
+        CollapsedKey key = getCollapsedKey(toggled);
+        boolean changed = collapsed ? collapsedSections.add(key) : collapsedSections.remove(key);
+        if (!changed) {
+            return false;
+        }
+        lookupValid = false;
+
+        // Positions of the sections before the toggled one already reflect the new state.
+        int position = 0;
+        for (int section = 0; section < sectionCount; section++) {
+            int sectionSize = getSectionSize(section);
+            int headerRows = getHeaderRows(section);
+            if (sectionHeaderId[section] == headerId && sectionParentId[section] == parentId) {
+                sectionCollapsed[section] = collapsed;
+                if (collapsed) {
+                    callback.onRemoved(position + headerRows, sectionSize);
+                } else {
+                    callback.onInserted(position + headerRows, sectionSize);
+                }
+            }
+            position += headerRows + getVisibleSectionSize(section);
+        }
+        return true;
+    }
+
+    /**
+     * Applies the changeSet to the map and notifies the callback about each step. The realm
+     * collection must already reflect the changeSet since the headers of inserted and changed
+     * rows are read from it. Rows that stay in their section are notified with the changePayload,
+     * which may be null.
+     */
+    void applyChangeSet(
+            OrderedCollectionChangeSet changeSet,
+            HeaderReader reader,
+            Object changePayload,
+            ListUpdateCallback callback) {
+        lookupValid = false;
+
+        // Deletions refer to the old collection and have to be applied in reverse order.
+        OrderedCollectionChangeSet.Range[] deletions = changeSet.getDeletionRanges();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            removeRange(deletions[i].startIndex, deletions[i].length, callback);
+        }
+
+        OrderedCollectionChangeSet.Range[] insertions = changeSet.getInsertionRanges();
+        for (OrderedCollectionChangeSet.Range range : insertions) {
+            insertRange(range.startIndex, range.length, reader, callback);
+        }
+
+        OrderedCollectionChangeSet.Range[] modifications = changeSet.getChangeRanges();
+        for (OrderedCollectionChangeSet.Range range : modifications) {
+            changeRange(range.startIndex, range.length, reader, changePayload, callback);
+        }
+
+        if (aggregates != null) {
+            dispatchChangedAggregates(callback);
+        }
+    }
+
+    /**
+     * Notifies the headers of the sections whose aggregates changed.
+     */
+    private void dispatchChangedAggregates(ListUpdateCallback callback) {
+        int position = 0;
+        for (int section = 0; section < sectionCount; section++) {
+            int headerRows = getHeaderRows(section);
+            if (aggregates.isDirty(section)) {
+                callback.onChanged(position + headerRows - 1, 1, null);
+            }
+            position += headerRows + getVisibleSectionSize(section);
+        }
+        aggregates.clearDirty();
+    }
+
+    private void removeRange(int start, int length, ListUpdateCallback callback) {
+        int end = start + length;
+        while (end > start) {
+            int section = sectionForRealmIndex(end - 1);
+            int sectionStart = sectionRealmStart[section];
+            int from = Math.max(start, sectionStart);
+            int count = end - from;
+
+            if (!isCollapsed(section)) {
+                callback.onRemoved(getHeaderPosition(section) + 1 + from - sectionStart, count);
+            }
+            realmCount -= count;
+            shiftSections(section + 1, -count);
+            if (aggregates != null) {
+                aggregates.rowsRemoved(from, count);
+                aggregates.sectionTouched(section);
+            }
+
+            if (getSectionSize(section) == 0) {
+                removeEmptySection(section, callback);
+            }
+            end = from;
+        }
+    }
+
+    private void insertRange(
+            int start,
+            int length,
+            HeaderReader reader,
+            ListUpdateCallback callback) {
+        // Consecutive rows with the same headers are inserted as a single run.
+        int runStart = start;
+        String runHeader = reader.readHeader(start);
+        String runParent = nested ? reader.readParentHeader(start) : null;
+        for (int i = start + 1; i < start + length; i++) {
+            String header = reader.readHeader(i);
+            String parent = nested ? reader.readParentHeader(i) : null;
+            if (!equals(runHeader, header) || !equals(runParent, parent)) {
+                insertRun(runStart, i - runStart, runHeader, runParent, reader, callback);
+                runStart = i;
+                runHeader = header;
+                runParent = parent;
+            }
+        }
+        insertRun(runStart, start + length - runStart, runHeader, runParent, reader, callback);
+    }
+
+    private void insertRun(
+            int index,
+            int count,
+            String header,
+            String parent,
+            HeaderReader reader,
+            ListUpdateCallback callback) {
+        int previous = index > 0 ? sectionForRealmIndex(index - 1) : -1;
+        int next = index < realmCount ? sectionForRealmIndex(index) : -1;
+        if (aggregates != null) {
+            aggregates.rowsInserted(index, count, reader);
+        }
+
+        if (previous != -1 && hasHeaders(previous, header, parent)) {
+            // Extends the previous section, which may also contain the next row.
+            int position = getPosition(index - 1) + 1;
+            realmCount += count;
+            shiftSections(previous + 1, count);
+            touchAggregates(previous);
+            if (!isCollapsed(previous)) {
+                callback.onInserted(position, count);
+            }
+
+        } else if (next != -1 && next != previous && hasHeaders(next, header, parent)) {
+            // Prepends to the next section.
+            int position = getHeaderPosition(next) + 1;
+            realmCount += count;
+            shiftSections(next + 1, count);
+            touchAggregates(next);
+            if (!isCollapsed(next)) {
+                callback.onInserted(position, count);
+            }
+
+        } else if (next != -1 && next == previous) {
+            // Splits a section: new headers, the rows and the headers of the remaining part.
+            int position = getHeaderPosition(next) + 1
+                    + (isCollapsed(next) ? 0 : index - sectionRealmStart[next]);
+            String splitHeader = getSectionHeader(next);
+            String splitParent = nested ? headerTable[sectionParentId[next]] : null;
+            realmCount += count;
+            shiftSections(next + 1, count);
+            insertSection(next + 1, index, header, parent);
+            insertSection(next + 2, index + count, splitHeader, splitParent);
+            touchAggregates(next);
+            callback.onInserted(position, getHeaderRows(next + 1)
+                    + getVisibleSectionSize(next + 1) + getHeaderRows(next + 2));
+
+        } else {
+            // A new section between two sections with different headers or at the end.
+            int position = next == -1 ? size() : getSectionPosition(next);
+            int section = next == -1 ? sectionCount : next;
+            realmCount += count;
+            shiftSections(section, count);
+            insertSection(section, index, header, parent);
+            callback.onInserted(
+                    position, getHeaderRows(section) + getVisibleSectionSize(section));
+            updateStartsParent(section + 1, callback);
+        }
+    }
+
+    private void changeRange(
+            int start,
+            int length,
+            HeaderReader reader,
+            Object changePayload,
+            ListUpdateCallback callback) {
+        int changedStart = -1;
+        int changedCount = 0;
+        for (int i = start; i < start + length; i++) {
+            String header = reader.readHeader(i);
+            String parent = nested ? reader.readParentHeader(i) : null;
+            int section = sectionForRealmIndex(i);
+            if (hasHeaders(section, header, parent)) {
+                int position = getPosition(i);
+                if (aggregates != null && aggregates.hasValues()) {
+                    aggregates.rowChanged(i, reader);
+                    aggregates.sectionTouched(section);
+                }
+                if (position == -1) {
+                    // Hidden in a collapsed section.
+                    continue;
+                }
+                if (changedCount > 0 && changedStart + changedCount == position) {
+                    changedCount++;
+                } else {
+                    if (changedCount > 0) {
+                        callback.onChanged(changedStart, changedCount, changePayload);
+                    }
+                    changedStart = position;
+                    changedCount = 1;
+                }
+            } else {
+                // The row moved to another section, its header has to be re-evaluated.
+                if (changedCount > 0) {
+                    callback.onChanged(changedStart, changedCount, changePayload);
+                    changedCount = 0;
+                }
+                removeRange(i, 1, callback);
+                insertRun(i, 1, header, parent, reader, callback);
+            }
+        }
+        if (changedCount > 0) {
+            callback.onChanged(changedStart, changedCount, changePayload);
+        }
+    }
+
+    /**
+     * Removes an empty section and merges its neighbours if they now share the same headers.
+     */
+    private void removeEmptySection(int section, ListUpdateCallback callback) {
+        callback.onRemoved(getSectionPosition(section), getHeaderRows(section));
+        removeSection(section);
+
+        if (section > 0 && section < sectionCount
+                && sectionHeaderId[section - 1] == sectionHeaderId[section]
+                && sectionParentId[section - 1] == sectionParentId[section]) {
+            callback.onRemoved(getSectionPosition(section), getHeaderRows(section));
+            removeSection(section);
+            touchAggregates(section - 1);
+        } else {
+            updateStartsParent(section, callback);
+        }
+    }
+
+    /**
+     * Shows or hides the parent header of the section after the section before it changed.
+     */
+    private void updateStartsParent(int section, ListUpdateCallback callback) {
+        if (section >= sectionCount) {
+            return;
+        }
+        boolean startsParent = startsParent(section);
+        if (startsParent == sectionStartsParent[section]) {
+            return;
+        }
+        // The parent header is the first row of the section.
+        int position = getSectionPosition(section);
+        sectionStartsParent[section] = startsParent;
+        if (startsParent) {
+            callback.onInserted(position, 1);
+        } else {
+            callback.onRemoved(position, 1);
+        }
+    }
+
+    private boolean startsParent(int section) {
+        return nested
+                && (section == 0 || sectionParentId[section] != sectionParentId[section - 1]);
+    }
+
+    private void touchAggregates(int section) {
+        if (aggregates != null) {
+            aggregates.sectionTouched(section);
+        }
+    }
+
+    private void insertSection(int section, int realmStart, String header, String parent) {
+        if (sectionCount == sectionRealmStart.length) {
+            int capacity = sectionCount * 2;
+            sectionRealmStart = Arrays.copyOf(sectionRealmStart, capacity);
+            sectionHeaderId = Arrays.copyOf(sectionHeaderId, capacity);
+            sectionParentId = Arrays.copyOf(sectionParentId, capacity);
+            sectionStartsParent = Arrays.copyOf(sectionStartsParent, capacity);
+            sectionCollapsed = Arrays.copyOf(sectionCollapsed, capacity);
+        }
+        int tail = sectionCount - section;
+        System.arraycopy(sectionRealmStart, section, sectionRealmStart, section + 1, tail);
+        System.arraycopy(sectionHeaderId, section, sectionHeaderId, section + 1, tail);
+        System.arraycopy(sectionParentId, section, sectionParentId, section + 1, tail);
+        System.arraycopy(sectionStartsParent, section, sectionStartsParent, section + 1, tail);
+        System.arraycopy(sectionCollapsed, section, sectionCollapsed, section + 1, tail);
+        sectionRealmStart[section] = realmStart;
+        sectionHeaderId[section] = getHeaderId(header);
+        sectionParentId[section] = nested ? getHeaderId(parent) : -1;
+        sectionCount++;
+        sectionStartsParent[section] = startsParent(section);
+        sectionCollapsed[section] = !collapsedSections.isEmpty()
+                && collapsedSections.contains(getCollapsedKey(section));
+        if (aggregates != null) {
+            aggregates.sectionInserted(section);
+        }
+        lookupValid = false;
+    }
+
+    private void removeSection(int section) {
+        int tail = sectionCount - section - 1;
+        System.arraycopy(sectionRealmStart, section + 1, sectionRealmStart, section, tail);
+        System.arraycopy(sectionHeaderId, section + 1, sectionHeaderId, section, tail);
+        System.arraycopy(sectionParentId, section + 1, sectionParentId, section, tail);
+        System.arraycopy(sectionStartsParent, section + 1, sectionStartsParent, section, tail);
+        System.arraycopy(sectionCollapsed, section + 1, sectionCollapsed, section, tail);
+        sectionCount--;
+        if (aggregates != null) {
+            aggregates.sectionRemoved(section);
+        }
+        lookupValid = false;
+    }
+
+    private int getHeaderId(String header) {
+        Integer id = headerIds.get(header);
+        if (id != null) {
+            return id;
+        }
+        if (headerTableSize == headerTable.length) {
+            headerTable = Arrays.copyOf(headerTable, headerTableSize * 2);
+        }
+        headerTable[headerTableSize] = header;
+        headerIds.put(header, headerTableSize);
+        return headerTableSize++;
+    }
+
+    private String getSectionHeader(int section) {
+        return headerTable[sectionHeaderId[section]];
+    }
+
+    private boolean hasHeaders(int section, String header, String parent) {
+        return equals(getSectionHeader(section), header)
+                && (!nested || equals(headerTable[sectionParentId[section]], parent));
+    }
+
+    private void shiftSections(int fromSection, int delta) {
+        for (int i = fromSection; i < sectionCount; i++) {
+            sectionRealmStart[i] += delta;
+        }
+        lookupValid = false;
+    }
+
+    private boolean isCollapsed(int section) {
+        return sectionCollapsed[section];
+    }
+
+    private CollapsedKey getCollapsedKey(int section) {
+        return new CollapsedKey(
+                getSectionHeader(section), nested ? headerTable[sectionParentId[section]] : null);
+    }
+
+    /**
+     * @return 2 if the section starts with a parent header, 1 otherwise.
+     */
+    private int getHeaderRows(int section) {
+        return sectionStartsParent[section] ? 2 : 1;
+    }
+
+    /**
+     * @return the position of the first header row of the section, or the size for the section
+     * after the last one.
+     */
+    private int getSectionPosition(int section) {
+        if (lookupValid) {
+            return sectionPosition[section];
+        }
+        if (!nested && collapsedSections.isEmpty()) {
+            int realmStart = section < sectionCount ? sectionRealmStart[section] : realmCount;
+            return realmStart + section;
+        }
+        int position = 0;
+        for (int i = 0; i < section; i++) {
+            position += getHeaderRows(i) + getVisibleSectionSize(i);
+        }
+        return position;
+    }
+
+    private int getHeaderPosition(int section) {
+        return getSectionPosition(section) + getHeaderRows(section) - 1;
+    }
+
+    private int getVisibleSectionSize(int section) {
+        return isCollapsed(section) ? 0 : getSectionSize(section);
+    }
+
+    private int getSectionSize(int section) {
+        return getSectionEnd(section) - sectionRealmStart[section];
+    }
+
+    private int getSectionEnd(int section) {
+        return section + 1 < sectionCount ? sectionRealmStart[section + 1] : realmCount;
+    }
+
+    private int sectionForRealmIndex(int realmIndex) {
+        int low = 0;
+        int high = sectionCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (sectionRealmStart[mid] <= realmIndex) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the section the position belongs to, found by a binary search.
+     */
+    private int sectionAtPosition(int position) {
+        ensureLookup();
+        int low = 0;
+        int high = sectionCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (sectionPosition[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the section of the section header at the position.
+     * @throws IllegalArgumentException if the position is not a section header.
+     */
+    private int sectionAtHeader(int headerPosition) {
+        int section = sectionAtPosition(headerPosition);
+        if (headerPosition != sectionPosition[section] + getHeaderRows(section) - 1) {
+            throw new IllegalArgumentException(
+                    "No section header at position " + headerPosition);
+        }
+        return section;
+    }
+
+    private void ensureLookup() {
+        if (lookupValid) {
+            return;
+        }
+        if (sectionPosition.length < sectionCount + 1) {
+            sectionPosition = new int[Math.max(sectionCount + 1, sectionPosition.length * 2)];
+        }
+        int position = 0;
+        for (int section = 0; section < sectionCount; section++) {
+            sectionPosition[section] = position;
+            position += getHeaderRows(section) + getVisibleSectionSize(section);
+        }
+        sectionPosition[sectionCount] = position;
+        lookupValid = true;
+    }
+
+    /**
+     * Null safe String equality, like TextUtils.equals() but without the Android framework.
+     */
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * The headers of a collapsed section, the parent header is null if the map isn't nested.
+     */
+    private static final class CollapsedKey {
+        final String header;
+        final String parent;
+
+        CollapsedKey(String header, String parent) {
+            this.header = header;
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CollapsedKey)) {
+                return false;
+            }
+            CollapsedKey other = (CollapsedKey) o;
+            return SectionedRowMap.equals(header, other.header)
+                    && SectionedRowMap.equals(parent, other.parent);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (header == null ? 0 : header.hashCode())
+                    + (parent == null ? 0 : parent.hashCode());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.realm;
+
+/**
+ * The sizes of the sources of a {@link RealmMultiSourceAdapter} as a Fenwick tree, so that both
+ * the first position of a source and the source at a position are found in O(log k) for k
+ * sources, and a size is updated in O(log k) as well.
+ */
+class SourcePrefixSums {
+
+    private final int[] sizes;
+    // 1-based Fenwick tree over sizes
+    private final int[] tree;
+    private final int highestStep;
+
+    SourcePrefixSums(int sourceCount) {
+        sizes = new int[sourceCount];
+        tree = new int[sourceCount + 1];
+        highestStep = sourceCount == 0 ? 0 : Integer.highestOneBit(sourceCount);
+    }
+
+    int getSourceCount() {
+        return sizes.length;
+    }
+
+    int size(int source) {
+        return sizes[source];
+    }
+
+    void setSize(int source, int size) {
+        int delta = size - sizes[source];
+        if (delta == 0) {
+            return;
+        }
+        sizes[source] = size;
+        for (int i = source + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return the sum of the sizes of the sources before the source.
+     */
+    int startOf(int source) {
+        int sum = 0;
+        for (int i = source; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    int total() {
+        return startOf(sizes.length);
+    }
+
+    /**
+     * @return the source containing the position, which has to be less than {@link #total()}.
+     */
+    int sourceAt(int position) {
+        int source = 0;
+        int remaining = position;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            int next = source + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                source = next;
+                remaining -= tree[next];
+            }
+        }
+        return source;
+    }
+}
@@ -0,0 +1,203 @@
+package io.realm;
+
+import android.content.ContextWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes allocated by the bind path of {@link RealmBasedRecyclerViewAdapter} once it is
+ * warmed up. A steady-state bind must not allocate, neither for the view type nor for the row,
+ * nor for the layout params of the sticky headers.
+ *
+ * The adapter reads its rows from a fake collection and the sections from a row map built from
+ * fake headers.
+ */
+public class BindAllocationTest {
+
+    private static final int ROW_COUNT = 100;
+    private static final int ROWS_PER_SECTION = 10;
+    private static final int WARM_UP_BINDS = 50000;
+    private static final int BINDS = 200000;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void onBindViewHolder_doesNotAllocatePerBind() {
+        TestAdapter adapter = new TestAdapter(false);
+        adapter.setDataWithoutNotifying(createCollection(ROW_COUNT), new SectionedRowMap());
+        RealmViewHolder holder = new RealmViewHolder(new TestView());
+
+        long allocated = measureAllocatedBytes(adapter, holder, holder);
+
+        assertEquals(BINDS, adapter.bindCount - WARM_UP_BINDS);
+        assertEquals("bytes allocated per bind", 0, allocated / BINDS);
+    }
+
+    @Test
+    public void onBindViewHolder_stickyHeaders_doesNotAllocatePerBind() {
+        TestAdapter adapter = new TestAdapter(true);
+        SectionedRowMap rowMap = adapter.createRowMap();
+        rowMap.rebuild(ROW_COUNT, new SectionedRowMap.HeaderReader() {
+            @Override
+            public String readHeader(int realmIndex) {
+                return "Section " + realmIndex / ROWS_PER_SECTION;
+            }
+
+            @Override
+            public String readParentHeader(int realmIndex) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public double readValue(int realmIndex) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        adapter.setDataWithoutNotifying(createCollection(ROW_COUNT), rowMap);
+        RealmViewHolder rowHolder = new RealmViewHolder(new TestView());
+        RealmViewHolder headerHolder = new RealmViewHolder(new TestView());
+        headerHolder.headerTextView = new TextView(null);
+
+        long allocated = measureAllocatedBytes(adapter, rowHolder, headerHolder);
+
+        int sectionCount = ROW_COUNT / ROWS_PER_SECTION;
+        assertEquals(ROW_COUNT + sectionCount, adapter.getItemCount());
+        assertTrue(adapter.headerBindCount > 0);
+        assertEquals("bytes allocated per bind", 0, allocated / BINDS);
+        // The layout params are converted by the first bind and updated in place afterwards.
+        assertSame(rowHolder.itemView.getLayoutParams(), adapter.firstRowLayoutParams);
+    }
+
+    /**
+     * @return the bytes allocated by {@link #BINDS} binds after {@link #WARM_UP_BINDS} binds.
+     */
+    private long measureAllocatedBytes(
+            TestAdapter adapter,
+            RealmViewHolder rowHolder,
+            RealmViewHolder headerHolder) {
+        bind(adapter, rowHolder, headerHolder, WARM_UP_BINDS);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        // Reading the counter may allocate itself.
+        long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+        before = threads.getThreadAllocatedBytes(threadId);
+        bind(adapter, rowHolder, headerHolder, BINDS);
+        return threads.getThreadAllocatedBytes(threadId) - before - overhead;
+    }
+
+    private static void bind(
+            TestAdapter adapter,
+            RealmViewHolder rowHolder,
+            RealmViewHolder headerHolder,
+            int binds) {
+        int itemCount = adapter.getItemCount();
+        for (int i = 0; i < binds; i++) {
+            int position = i % itemCount;
+            boolean isHeader = adapter.getItemViewType(position) == adapter.HEADER_VIEW_TYPE;
+            adapter.onBindViewHolder(isHeader ? headerHolder : rowHolder, position);
+        }
+    }
+
+    /**
+     * @return a valid collection of the size, its rows aren't read by the bind path.
+     */
+    @SuppressWarnings("unchecked")
+    private static OrderedRealmCollection<RealmModel> createCollection(final int size) {
+        return (OrderedRealmCollection<RealmModel>) Proxy.newProxyInstance(
+                OrderedRealmCollection.class.getClassLoader(),
+                new Class<?>[] {OrderedRealmCollection.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("isValid")) {
+                            return Boolean.TRUE;
+                        } else if (name.equals("size")) {
+                            return size;
+                        } else if (name.equals("isEmpty")) {
+                            return size == 0;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    /**
+     * Keeps its layout params, which the framework stubs of the unit tests don't.
+     */
+    private static class TestView extends View {
+
+        private ViewGroup.LayoutParams layoutParams = new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+
+        TestView() {
+            super(null);
+        }
+
+        @Override
+        public ViewGroup.LayoutParams getLayoutParams() {
+            return layoutParams;
+        }
+
+        @Override
+        public void setLayoutParams(ViewGroup.LayoutParams params) {
+            layoutParams = params;
+        }
+    }
+
+    private static class TestAdapter
+            extends RealmBasedRecyclerViewAdapter<RealmModel, RealmViewHolder> {
+
+        int bindCount;
+        int headerBindCount;
+        int lastPosition;
+        ViewGroup.LayoutParams firstRowLayoutParams;
+
+        TestAdapter(boolean isStickyHeader) {
+            super(new ContextWrapper(null), null, false, false,
+                    isStickyHeader, isStickyHeader ? "section" : null, isStickyHeader);
+        }
+
+        @Override
+        public RealmViewHolder onCreateRealmViewHolder(ViewGroup viewGroup, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindRealmViewHolder(RealmViewHolder holder, int position) {
+            if (firstRowLayoutParams == null) {
+                firstRowLayoutParams = holder.itemView.getLayoutParams();
+            }
+            bindCount++;
+            lastPosition = position;
+        }
+
+        @Override
+        public void onBindHeaderViewHolder(RealmViewHolder holder, int position) {
+            super.onBindHeaderViewHolder(holder, position);
+            headerBindCount++;
+        }
+    }
+}
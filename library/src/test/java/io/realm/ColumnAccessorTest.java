@@ -0,0 +1,135 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import io.realm.internal.Row;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares reading the header column of every row with the column index and type looked up per
+ * row, the way the section headers used to be read, against a {@link ColumnAccessor} that is
+ * resolved once for the collection.
+ *
+ * The rows are fakes that look up their columns by name and count the lookups, the cost of the
+ * native reads isn't covered.
+ */
+public class ColumnAccessorTest {
+
+    private static final int ROW_COUNT = 100000;
+
+    private static final String[] COLUMN_NAMES = {
+            "id", "firstName", "lastName", "email", "phone", "city", "country", "createdAt"};
+    private static final RealmFieldType[] COLUMN_TYPES = {
+            RealmFieldType.INTEGER, RealmFieldType.STRING, RealmFieldType.STRING,
+            RealmFieldType.STRING, RealmFieldType.STRING, RealmFieldType.STRING,
+            RealmFieldType.STRING, RealmFieldType.DATE};
+    private static final String HEADER_COLUMN = "country";
+
+    private int lookupCount;
+    private Row row;
+
+    @Before
+    public void setUp() {
+        row = createRow();
+        lookupCount = 0;
+    }
+
+    @Test
+    public void perRowResolution_looksUpTheColumnForEveryRow() {
+        readResolvingPerRow(ROW_COUNT);
+        assertEquals(ROW_COUNT, lookupCount);
+    }
+
+    @Test
+    public void columnAccessor_looksUpTheColumnOnce() {
+        readWithAccessor(ROW_COUNT);
+        assertEquals(1, lookupCount);
+    }
+
+    @Test
+    public void getString_stringColumn_readsTheValue() {
+        ColumnAccessor accessor = ColumnAccessor.forColumn(row, HEADER_COLUMN);
+        assertEquals(HEADER_COLUMN, accessor.getString(row));
+    }
+
+    @Test
+    public void forNumericColumn_integerColumn_readsDoubles() {
+        ColumnAccessor accessor = ColumnAccessor.forNumericColumn(row, "id");
+        assertEquals(0, accessor.getLong(row));
+        assertEquals(0, accessor.getDouble(row), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getString_integerColumn_throws() {
+        ColumnAccessor.forColumn(row, "id").getString(row);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void forNumericColumn_stringColumn_throws() {
+        ColumnAccessor.forNumericColumn(row, HEADER_COLUMN);
+    }
+
+    /**
+     * Reads the header column the way createRowWrappers() did before the column was cached.
+     */
+    private int readResolvingPerRow(int rowCount) {
+        int hash = 0;
+        for (int i = 0; i < rowCount; i++) {
+            long columnIndex = row.getColumnIndex(HEADER_COLUMN);
+            RealmFieldType fieldType = row.getColumnType(columnIndex);
+            Object value;
+            if (fieldType == RealmFieldType.STRING) {
+                value = row.getString(columnIndex);
+            } else if (fieldType == RealmFieldType.INTEGER) {
+                value = row.getLong(columnIndex);
+            } else {
+                throw new IllegalStateException("columnValue type not supported");
+            }
+            hash += value.hashCode();
+        }
+        return hash;
+    }
+
+    private int readWithAccessor(int rowCount) {
+        ColumnAccessor accessor = ColumnAccessor.forColumn(row, HEADER_COLUMN);
+        int hash = 0;
+        for (int i = 0; i < rowCount; i++) {
+            hash += accessor.getString(row).hashCode();
+        }
+        return hash;
+    }
+
+    private Row createRow() {
+        return (Row) Proxy.newProxyInstance(
+                Row.class.getClassLoader(),
+                new Class<?>[] {Row.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getColumnIndex")) {
+                            lookupCount++;
+                            for (int i = 0; i < COLUMN_NAMES.length; i++) {
+                                if (COLUMN_NAMES[i].equals(args[0])) {
+                                    return (long) i;
+                                }
+                            }
+                            return -1L;
+                        } else if (name.equals("getColumnType")) {
+                            return COLUMN_TYPES[(int) (long) (Long) args[0]];
+                        } else if (name.equals("getString")) {
+                            return COLUMN_NAMES[(int) (long) (Long) args[0]];
+                        } else if (name.equals("getLong")) {
+                            return args[0];
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+}
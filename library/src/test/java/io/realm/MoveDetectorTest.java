@@ -0,0 +1,220 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import io.realm.TestCollections.Changed;
+import io.realm.TestCollections.ListModel;
+
+import static org.junit.Assert.*;
+
+/**
+ * Dispatches the change sets of sorted results, whose moves Realm reports as deletions and
+ * insertions, and checks that the notifications turn the old rows into the new ones.
+ */
+public class MoveDetectorTest {
+
+    private static final int SEEDS = 1000;
+
+    private MoveDetector moveDetector;
+
+    @Before
+    public void setUp() {
+        moveDetector = new MoveDetector(new PrimaryKeyReader() {
+            @Override
+            Object readKey(RealmModel model) {
+                return ((TestModel) model).key;
+            }
+        });
+    }
+
+    @Test
+    public void dispatch_rowMovedForward_isMoved() {
+        List<TestModel> previous = models(1, 2, 3, 4);
+        List<TestModel> current = reorder(previous, 2, 3, 1, 4);
+        ListModel model = new ListModel(previous);
+
+        assertTrue(dispatch(previous, current, new int[] {0}, new int[] {2}, new int[0], model));
+
+        assertRows(previous, current, model);
+    }
+
+    @Test
+    public void dispatch_movesDeletionsAndInsertions_endInTheCurrentOrder() {
+        List<TestModel> previous = models(1, 2, 3, 4, 5);
+        List<TestModel> current = new ArrayList<>(reorder(previous, 5, 2, 4, 1));
+        current.add(1, new TestModel(6));
+        ListModel model = new ListModel(previous);
+
+        assertTrue(dispatch(previous, current,
+                new int[] {0, 2, 4}, new int[] {0, 1, 4}, new int[0], model));
+
+        assertRows(previous, current, model);
+    }
+
+    @Test
+    public void dispatch_noMatchingKeys_dispatchesNothing() {
+        List<TestModel> previous = models(1, 2);
+        List<TestModel> current = models(3, 2);
+        ListModel model = new ListModel(previous);
+
+        assertFalse(dispatch(previous, current, new int[] {0}, new int[] {0}, new int[0], model));
+
+        assertEquals(previous, model.items);
+    }
+
+    @Test
+    public void dispatch_onlyDeletions_dispatchesNothing() {
+        List<TestModel> previous = models(1, 2);
+        ListModel model = new ListModel(previous);
+
+        assertFalse(dispatch(previous, previous.subList(1, 2),
+                new int[] {0}, new int[0], new int[0], model));
+    }
+
+    @Test
+    public void dispatch_tooManyMoves_dispatchesNothing() {
+        int count = MoveDetector.MAX_MOVES + 1;
+        List<TestModel> previous = new ArrayList<>();
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            previous.add(new TestModel(i));
+            indexes[i] = i;
+        }
+        List<TestModel> current = new ArrayList<>(previous);
+        Collections.reverse(current);
+        ListModel model = new ListModel(previous);
+
+        assertFalse(dispatch(previous, current, indexes, indexes, new int[0], model));
+
+        assertEquals(previous, model.items);
+    }
+
+    @Test
+    public void dispatch_randomChanges_endInTheCurrentOrder() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            int count = random.nextInt(20);
+            List<TestModel> previous = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                previous.add(new TestModel(i));
+            }
+
+            // Moves some rows, deletes some and inserts new ones.
+            List<TestModel> current = new ArrayList<>(previous);
+            Set<TestModel> moved = new HashSet<>();
+            for (int i = random.nextInt(5); i > 0 && !current.isEmpty(); i--) {
+                TestModel row = current.remove(random.nextInt(current.size()));
+                current.add(random.nextInt(current.size() + 1), row);
+                moved.add(row);
+            }
+            for (int i = random.nextInt(4); i > 0 && !current.isEmpty(); i--) {
+                moved.remove(current.remove(random.nextInt(current.size())));
+            }
+            for (int i = random.nextInt(4); i > 0; i--) {
+                current.add(random.nextInt(current.size() + 1), new TestModel(count + i));
+            }
+
+            List<Integer> deletions = new ArrayList<>();
+            for (int i = 0; i < previous.size(); i++) {
+                TestModel row = previous.get(i);
+                if (moved.contains(row) || !current.contains(row)) {
+                    deletions.add(i);
+                }
+            }
+            List<Integer> insertions = new ArrayList<>();
+            for (int i = 0; i < current.size(); i++) {
+                TestModel row = current.get(i);
+                if (moved.contains(row) || !previous.contains(row)) {
+                    insertions.add(i);
+                }
+            }
+
+            ListModel model = new ListModel(previous);
+            boolean dispatched = dispatch(previous, current, TestCollections.toArray(deletions),
+                    TestCollections.toArray(insertions), new int[0], model);
+
+            assertEquals("seed " + seed, !moved.isEmpty(), dispatched);
+            if (dispatched) {
+                assertRows(previous, current, model);
+            }
+        }
+    }
+
+    private boolean dispatch(
+            List<TestModel> previous,
+            List<TestModel> current,
+            int[] deletions,
+            int[] insertions,
+            int[] changes,
+            ListModel model) {
+        return moveDetector.dispatch(
+                TestCollections.changeSet(deletions, insertions, changes),
+                TestCollections.collection(previous),
+                TestCollections.collection(current),
+                null,
+                model);
+    }
+
+    /**
+     * Asserts that the model shows the current rows and that the rows that were already shown,
+     * the moved ones included, kept their views.
+     */
+    private static void assertRows(
+            List<TestModel> previous,
+            List<TestModel> current,
+            ListModel model) {
+        assertEquals(current.size(), model.items.size());
+        for (int i = 0; i < current.size(); i++) {
+            Object item = model.items.get(i);
+            if (item instanceof Changed) {
+                item = ((Changed) item).item;
+            }
+            if (previous.contains(current.get(i))) {
+                assertSame(current.get(i), item);
+            } else {
+                assertSame(ListModel.INSERTED, item);
+            }
+        }
+    }
+
+    private static List<TestModel> models(int... keys) {
+        List<TestModel> models = new ArrayList<>();
+        for (int key : keys) {
+            models.add(new TestModel(key));
+        }
+        return models;
+    }
+
+    private static List<TestModel> reorder(List<TestModel> models, int... keys) {
+        List<TestModel> reordered = new ArrayList<>();
+        for (int key : keys) {
+            for (TestModel model : models) {
+                if (model.key == key) {
+                    reordered.add(model);
+                }
+            }
+        }
+        return reordered;
+    }
+
+    private static final class TestModel implements RealmModel {
+        final long key;
+
+        TestModel(long key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return "TestModel(" + key + ")";
+        }
+    }
+}
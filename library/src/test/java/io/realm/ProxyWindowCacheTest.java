@@ -0,0 +1,110 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProxyWindowCacheTest {
+
+    private static final int ROW_COUNT = 20;
+
+    private List<TestModel> rows;
+    private int readCount;
+    private OrderedRealmCollection<TestModel> data;
+    private ProxyWindowCache<TestModel> cache;
+
+    @Before
+    public void setUp() {
+        rows = new ArrayList<>();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows.add(new TestModel());
+        }
+        data = createCollection();
+        cache = new ProxyWindowCache<>(4);
+        readCount = 0;
+    }
+
+    @Test
+    public void get_cachedRow_isNotReadAgain() {
+        TestModel row = cache.get(data, 3);
+
+        assertSame(row, cache.get(data, 3));
+        assertSame(rows.get(3), row);
+        assertEquals(1, readCount);
+    }
+
+    @Test
+    public void get_windowOfTheCacheSize_isCachedWithoutEvictions() {
+        for (int i = 5; i < 9; i++) {
+            cache.get(data, i);
+        }
+        for (int i = 5; i < 9; i++) {
+            assertSame(rows.get(i), cache.get(data, i));
+        }
+        assertEquals(4, readCount);
+
+        // Replaces row 5, which is in the same slot.
+        cache.get(data, 9);
+        cache.get(data, 5);
+        assertEquals(6, readCount);
+    }
+
+    @Test
+    public void get_otherCollection_clearsTheCache() {
+        cache.get(data, 0);
+
+        OrderedRealmCollection<TestModel> snapshot = createCollection();
+        assertSame(rows.get(0), cache.get(snapshot, 0));
+        assertEquals(2, readCount);
+    }
+
+    @Test
+    public void applyChangeSet_remapsTheCachedRows() {
+        for (int i = 4; i < 8; i++) {
+            cache.get(data, i);
+        }
+        rows.remove(5);
+        rows.add(0, new TestModel());
+        cache.applyChangeSet(TestCollections.changeSet(new int[] {5}, new int[] {0}, new int[0]));
+
+        readCount = 0;
+        for (int i = 5; i < 8; i++) {
+            assertSame(rows.get(i), cache.get(data, i));
+        }
+        assertEquals(0, readCount);
+        // The row cached at 4 moved to 5.
+        assertSame(rows.get(4), cache.get(data, 4));
+        assertEquals(1, readCount);
+    }
+
+    @Test
+    public void applyChangeSet_onlyChanges_keepsTheCachedRows() {
+        cache.get(data, 1);
+        cache.applyChangeSet(TestCollections.changeSet(new int[0], new int[0], new int[] {1}));
+
+        cache.get(data, 1);
+        assertEquals(1, readCount);
+    }
+
+    private OrderedRealmCollection<TestModel> createCollection() {
+        return TestCollections.collection(new ArrayList<TestModel>() {
+            @Override
+            public TestModel get(int index) {
+                readCount++;
+                return rows.get(index);
+            }
+
+            @Override
+            public int size() {
+                return rows.size();
+            }
+        });
+    }
+
+    private static final class TestModel implements RealmModel {
+    }
+}
@@ -0,0 +1,134 @@
+package io.realm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SectionAggregatesTest {
+
+    private double[] values;
+    private SectionAggregates aggregates;
+
+    private final SectionedRowMap.HeaderReader reader = new SectionedRowMap.HeaderReader() {
+        @Override
+        public String readHeader(int realmIndex) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String readParentHeader(int realmIndex) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public double readValue(int realmIndex) {
+            return values[realmIndex];
+        }
+    };
+
+    @Before
+    public void setUp() {
+        aggregates = new SectionAggregates(true);
+    }
+
+    @Test
+    public void getSum_aggregatesTheRowsOfTheSection() {
+        // Two sections, rows 0-2 and 3-4
+        values = new double[] {3, -1, 2, 7, 7};
+        aggregates.rowsInserted(0, values.length, reader);
+        aggregates.sectionInserted(0);
+        aggregates.sectionInserted(1);
+
+        assertEquals(4, aggregates.getSum(0, 0, 3), 0);
+        assertEquals(-1, aggregates.getMin(0, 0, 3), 0);
+        assertEquals(3, aggregates.getMax(0, 0, 3), 0);
+        assertEquals(14, aggregates.getSum(1, 3, 5), 0);
+        assertEquals(7, aggregates.getMin(1, 3, 5), 0);
+    }
+
+    @Test
+    public void getMin_emptySection_isNaN() {
+        aggregates.sectionInserted(0);
+
+        assertEquals(0, aggregates.getSum(0, 0, 0), 0);
+        assertTrue(Double.isNaN(aggregates.getMin(0, 0, 0)));
+        assertTrue(Double.isNaN(aggregates.getMax(0, 0, 0)));
+    }
+
+    @Test
+    public void rowChanged_isOnlyAggregatedOnceTheSectionIsTouched() {
+        values = new double[] {1, 2};
+        aggregates.rowsInserted(0, 2, reader);
+        aggregates.sectionInserted(0);
+        assertEquals(3, aggregates.getSum(0, 0, 2), 0);
+
+        values[1] = 5;
+        aggregates.rowChanged(1, reader);
+        assertEquals(3, aggregates.getSum(0, 0, 2), 0);
+
+        aggregates.sectionTouched(0);
+        assertEquals(6, aggregates.getSum(0, 0, 2), 0);
+        assertEquals(5, aggregates.getMax(0, 0, 2), 0);
+    }
+
+    @Test
+    public void rowsInsertedAndRemoved_keepTheValuesInRealmIndexOrder() {
+        values = new double[] {1, 4};
+        aggregates.rowsInserted(0, 2, reader);
+        aggregates.sectionInserted(0);
+
+        values = new double[] {1, 2, 3, 4};
+        aggregates.rowsInserted(1, 2, reader);
+        aggregates.sectionTouched(0);
+        assertEquals(10, aggregates.getSum(0, 0, 4), 0);
+        assertEquals(1, aggregates.getMin(0, 0, 4), 0);
+
+        aggregates.rowsRemoved(0, 3);
+        aggregates.sectionTouched(0);
+        assertEquals(4, aggregates.getSum(0, 0, 1), 0);
+    }
+
+    @Test
+    public void sectionTouched_marksTheSectionDirtyUntilCleared() {
+        aggregates.sectionInserted(0);
+        aggregates.sectionInserted(1);
+        assertFalse(aggregates.isDirty(0));
+
+        aggregates.sectionTouched(1);
+        assertFalse(aggregates.isDirty(0));
+        assertTrue(aggregates.isDirty(1));
+
+        // The dirty flag moves with its section.
+        aggregates.sectionInserted(0);
+        assertTrue(aggregates.isDirty(2));
+        aggregates.sectionRemoved(0);
+        assertTrue(aggregates.isDirty(1));
+
+        aggregates.clearDirty();
+        assertFalse(aggregates.isDirty(1));
+    }
+
+    @Test
+    public void copyFrom_isIndependentOfTheOther() {
+        values = new double[] {1, 2};
+        aggregates.rowsInserted(0, 2, reader);
+        aggregates.sectionInserted(0);
+        SectionAggregates copy = new SectionAggregates(true);
+        copy.copyFrom(aggregates);
+
+        values[0] = 10;
+        aggregates.rowChanged(0, reader);
+        aggregates.sectionTouched(0);
+
+        assertEquals(12, aggregates.getSum(0, 0, 2), 0);
+        assertEquals(3, copy.getSum(0, 0, 2), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getSum_withoutValues_throws() {
+        aggregates = new SectionAggregates(false);
+        aggregates.sectionInserted(0);
+        aggregates.getSum(0, 0, 0);
+    }
+}
@@ -0,0 +1,520 @@
+package io.realm;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import io.realm.TestCollections.Changed;
+import io.realm.TestCollections.ListModel;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the positions and notifications of a {@link SectionedRowMap} against a model that
+ * renders the rows of the collection from scratch. Rows are rendered as "R:id", section headers
+ * as "H:header" and parent headers as "P:parent".
+ */
+public class SectionedRowMapTest {
+
+    private static final String[] HEADERS = {"A", "B", "C", "D"};
+    private static final String[] PARENTS = {"x", "y"};
+    private static final int SEEDS = 500;
+    private static final int STEPS = 30;
+
+    private List<TestRow> rows;
+    private boolean nested;
+    private Set<String> collapsed;
+    private SectionedRowMap map;
+    private int nextId;
+
+    private final SectionedRowMap.HeaderReader reader = new SectionedRowMap.HeaderReader() {
+        @Override
+        public String readHeader(int realmIndex) {
+            return rows.get(realmIndex).header;
+        }
+
+        @Override
+        public String readParentHeader(int realmIndex) {
+            return rows.get(realmIndex).parent;
+        }
+
+        @Override
+        public double readValue(int realmIndex) {
+            return rows.get(realmIndex).value;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        rows = new ArrayList<>();
+        nested = false;
+        collapsed = new HashSet<>();
+        map = new SectionedRowMap();
+        nextId = 0;
+    }
+
+    @Test
+    public void rebuild_addsAHeaderBeforeEachSection() {
+        addRows("A", "A", "B", "A");
+        map.rebuild(rows.size(), reader);
+
+        assertEquals(Arrays.asList("H:A", "R:0", "R:1", "H:B", "R:2", "H:A", "R:3"), render(map));
+        assertEquals(4, map.getRealmCount());
+        assertEquals(4, map.getPosition(2));
+        assertEquals(-1, map.getRealmIndex(3));
+        assertEquals(3, map.getSectionFirstPosition(4));
+        assertEquals(2, map.getSectionRealmStart(4));
+    }
+
+    @Test
+    public void rebuild_nested_addsAParentHeaderWhenTheParentChanges() {
+        setNested();
+        addRow("A", "x");
+        addRow("B", "x");
+        addRow("B", "y");
+        map.rebuild(rows.size(), reader);
+
+        assertEquals(Arrays.asList("P:x", "H:A", "R:0", "H:B", "R:1", "P:y", "H:B", "R:2"),
+                render(map));
+        assertEquals(0, map.getHeaderLevel(0));
+        assertEquals(1, map.getHeaderLevel(1));
+        assertEquals(-1, map.getHeaderLevel(2));
+        assertFalse(map.isSectionHeader(0));
+        assertTrue(map.isSectionHeader(1));
+        assertEquals(0, map.getSectionFirstPosition(0));
+        assertEquals(6, map.getSectionFirstPosition(7));
+    }
+
+    @Test
+    public void rebuildSorted_matchesRebuild() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            setUp();
+            nested = random.nextBoolean();
+            int count = random.nextInt(200);
+            for (int i = 0; i < count; i++) {
+                rows.add(createRow(random));
+            }
+            Collections.sort(rows, new Comparator<TestRow>() {
+                @Override
+                public int compare(TestRow a, TestRow b) {
+                    int parent = nested ? a.parent.compareTo(b.parent) : 0;
+                    return parent != 0 ? parent : a.header.compareTo(b.header);
+                }
+            });
+
+            SectionedRowMap sorted = new SectionedRowMap();
+            sorted.setNested(nested);
+            sorted.rebuildSorted(rows.size(), reader);
+            map.setNested(nested);
+            map.rebuild(rows.size(), reader);
+
+            assertEquals("seed " + seed, render(map), render(sorted));
+        }
+    }
+
+    @Test
+    public void applyChangeSet_insertionInsideASection_splitsIt() {
+        addRows("A", "A");
+        map.rebuild(rows.size(), reader);
+        ListModel model = new ListModel(render(map));
+
+        rows.add(1, new TestRow(nextId++, "B", null, 0));
+        map.applyChangeSet(changeSet(new int[0], new int[] {1}, new int[0]), reader, null, model);
+
+        assertEquals(Arrays.asList("H:A", "R:0", "H:B", "R:2", "H:A", "R:1"), render(map));
+        assertRendered(model);
+    }
+
+    @Test
+    public void applyChangeSet_removingASection_mergesItsNeighbours() {
+        addRows("A", "B", "A");
+        map.rebuild(rows.size(), reader);
+        ListModel model = new ListModel(render(map));
+
+        rows.remove(1);
+        map.applyChangeSet(changeSet(new int[] {1}, new int[0], new int[0]), reader, null, model);
+
+        assertEquals(Arrays.asList("H:A", "R:0", "R:2"), render(map));
+        assertEquals(render(map), model.items);
+    }
+
+    @Test
+    public void applyChangeSet_changedHeader_movesTheRowToAnotherSection() {
+        addRows("A", "A", "B");
+        map.rebuild(rows.size(), reader);
+        ListModel model = new ListModel(render(map));
+
+        rows.set(1, new TestRow(1, "B", null, 0));
+        map.applyChangeSet(changeSet(new int[0], new int[0], new int[] {1}), reader, null, model);
+
+        assertEquals(Arrays.asList("H:A", "R:0", "H:B", "R:1", "R:2"), render(map));
+        assertRendered(model);
+    }
+
+    @Test
+    public void applyChangeSet_changedRowInItsSection_isNotifiedWithThePayload() {
+        addRows("A", "A");
+        map.rebuild(rows.size(), reader);
+        final Object payload = new Object();
+        final List<String> notifications = new ArrayList<>();
+
+        map.applyChangeSet(changeSet(new int[0], new int[0], new int[] {0, 1}), reader, payload,
+                new RecordingCallback(notifications) {
+                    @Override
+                    public void onChanged(int position, int count, Object changePayload) {
+                        assertSame(payload, changePayload);
+                        super.onChanged(position, count, changePayload);
+                    }
+                });
+
+        assertEquals(Collections.singletonList("changed 1+2"), notifications);
+    }
+
+    @Test
+    public void setSectionCollapsed_hidesTheRowsOfAllSectionsWithTheHeader() {
+        addRows("A", "A", "B", "A");
+        map.rebuild(rows.size(), reader);
+        List<String> notifications = new ArrayList<>();
+
+        assertTrue(map.setSectionCollapsed(0, true, new RecordingCallback(notifications)));
+
+        assertEquals(Arrays.asList("removed 1+2", "removed 4+1"), notifications);
+        assertEquals(Arrays.asList("H:A", "H:B", "R:2", "H:A"), render(map));
+        assertTrue(map.isSectionCollapsed(0));
+        assertTrue(map.isSectionCollapsed(3));
+        assertFalse(map.isSectionCollapsed(1));
+        assertEquals(2, map.getSectionRowCount(0));
+        assertEquals(-1, map.getPosition(0));
+        assertFalse(map.setSectionCollapsed(3, true, new RecordingCallback(notifications)));
+
+        notifications.clear();
+        assertTrue(map.setSectionCollapsed(3, false, new RecordingCallback(notifications)));
+        assertEquals(Arrays.asList("inserted 1+2", "inserted 6+1"), notifications);
+        assertEquals(Arrays.asList("H:A", "R:0", "R:1", "H:B", "R:2", "H:A", "R:3"), render(map));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setSectionCollapsed_notASectionHeader_throws() {
+        addRows("A", "A");
+        map.rebuild(rows.size(), reader);
+        map.setSectionCollapsed(1, true, new RecordingCallback(new ArrayList<String>()));
+    }
+
+    @Test
+    public void setSectionCollapsed_nested_onlyCollapsesTheSectionsOfTheSameParent() {
+        setNested();
+        addRow("A", "x");
+        addRow("A", "y");
+        map.rebuild(rows.size(), reader);
+
+        map.setSectionCollapsed(1, true, new RecordingCallback(new ArrayList<String>()));
+
+        assertEquals(Arrays.asList("P:x", "H:A", "P:y", "H:A", "R:1"), render(map));
+        assertTrue(map.isSectionCollapsed(1));
+        assertFalse(map.isSectionCollapsed(3));
+    }
+
+    @Test
+    public void copyCollapsedSections_keepsTheCollapsedSectionsAcrossARebuild() {
+        addRows("A", "B");
+        map.rebuild(rows.size(), reader);
+        map.setSectionCollapsed(2, true, new RecordingCallback(new ArrayList<String>()));
+
+        addRows("B");
+        SectionedRowMap rebuilt = new SectionedRowMap();
+        rebuilt.rebuild(rows.size(), reader);
+        rebuilt.copyCollapsedSections(map);
+
+        assertEquals(Arrays.asList("H:A", "R:0", "H:B"), render(rebuilt));
+        assertEquals(2, rebuilt.getSectionRowCount(2));
+    }
+
+    @Test
+    public void aggregates_followTheChangeSetsAndNotifyTheirHeaders() {
+        map.setAggregated(true, true);
+        addRow("A", null, 1);
+        addRow("A", null, 2);
+        addRow("B", null, 5);
+        map.rebuild(rows.size(), reader);
+        assertEquals(3, map.getSectionSum(0), 0);
+        assertEquals(1, map.getSectionMin(0), 0);
+        assertEquals(2, map.getSectionMax(0), 0);
+        assertEquals(5, map.getSectionSum(3), 0);
+
+        List<String> notifications = new ArrayList<>();
+        rows.set(0, new TestRow(0, "A", null, 10));
+        map.applyChangeSet(changeSet(new int[0], new int[0], new int[] {0}), reader, null,
+                new RecordingCallback(notifications));
+
+        assertEquals(Arrays.asList("changed 1+1", "changed 0+1"), notifications);
+        assertEquals(12, map.getSectionSum(0), 0);
+        assertEquals(10, map.getSectionMax(0), 0);
+        assertEquals(5, map.getSectionSum(3), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getSectionSum_notAggregated_throws() {
+        addRows("A");
+        map.rebuild(rows.size(), reader);
+        map.getSectionSum(0);
+    }
+
+    /**
+     * Applies random change sets and collapses random sections, the notifications have to turn
+     * the rendering before each step into the one after it.
+     */
+    @Test
+    public void applyChangeSet_randomChanges_matchTheRenderedRows() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            setUp();
+            nested = random.nextBoolean();
+            boolean aggregated = random.nextBoolean();
+            map.setNested(nested);
+            map.setAggregated(aggregated, true);
+            int count = random.nextInt(12);
+            for (int i = 0; i < count; i++) {
+                rows.add(createRow(random));
+            }
+            map.rebuild(rows.size(), reader);
+
+            for (int step = 0; step < STEPS; step++) {
+                String message = "seed " + seed + " step " + step;
+                ListModel model = new ListModel(render(map));
+                if (random.nextInt(5) == 0 && map.size() > 0) {
+                    toggleRandomSection(random, model);
+                } else {
+                    applyRandomChangeSet(random, model);
+                }
+                assertEquals(message, expectedRendering(), render(map));
+                assertRendered(message, model);
+                if (aggregated) {
+                    assertAggregates(message);
+                }
+            }
+        }
+    }
+
+    private void toggleRandomSection(Random random, ListModel model) {
+        List<Integer> headers = new ArrayList<>();
+        for (int position = 0; position < map.size(); position++) {
+            if (map.isSectionHeader(position)) {
+                headers.add(position);
+            }
+        }
+        int position = headers.get(random.nextInt(headers.size()));
+        String key = collapsedKey(rows.get(map.getSectionRealmStart(position)));
+        boolean collapse = !collapsed.contains(key);
+        assertEquals(!collapse, map.isSectionCollapsed(position));
+        if (collapse) {
+            collapsed.add(key);
+        } else {
+            collapsed.remove(key);
+        }
+        assertTrue(map.setSectionCollapsed(position, collapse, model));
+    }
+
+    private void applyRandomChangeSet(Random random, ListModel model) {
+        List<Integer> deletions = new ArrayList<>();
+        List<TestRow> updated = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (random.nextInt(4) == 0) {
+                deletions.add(i);
+            } else {
+                updated.add(rows.get(i));
+            }
+        }
+        Set<TestRow> inserted = new HashSet<>();
+        int insertionCount = random.nextInt(4);
+        for (int i = 0; i < insertionCount; i++) {
+            TestRow row = createRow(random);
+            updated.add(random.nextInt(updated.size() + 1), row);
+            inserted.add(row);
+        }
+        List<Integer> insertions = new ArrayList<>();
+        List<Integer> changes = new ArrayList<>();
+        for (int i = 0; i < updated.size(); i++) {
+            TestRow row = updated.get(i);
+            if (inserted.contains(row)) {
+                insertions.add(i);
+            } else if (random.nextInt(4) == 0) {
+                changes.add(i);
+                updated.set(i, new TestRow(row.id,
+                        random.nextBoolean() ? HEADERS[random.nextInt(HEADERS.length)] : row.header,
+                        nested && random.nextBoolean()
+                                ? PARENTS[random.nextInt(PARENTS.length)] : row.parent,
+                        random.nextInt(10)));
+            }
+        }
+        rows = updated;
+        map.applyChangeSet(changeSet(TestCollections.toArray(deletions),
+                TestCollections.toArray(insertions), TestCollections.toArray(changes)),
+                reader, null, model);
+    }
+
+    private void assertAggregates(String message) {
+        for (int position = 0; position < map.size(); position++) {
+            if (!map.isSectionHeader(position)) {
+                continue;
+            }
+            int realmStart = map.getSectionRealmStart(position);
+            int rowCount = 0;
+            double sum = 0;
+            TestRow first = rows.get(realmStart);
+            for (int i = realmStart; i < rows.size() && hasHeaders(rows.get(i), first); i++) {
+                rowCount++;
+                sum += rows.get(i).value;
+            }
+            assertEquals(message, rowCount, map.getSectionRowCount(position));
+            assertEquals(message, sum, map.getSectionSum(position), 0);
+        }
+    }
+
+    /**
+     * Asserts that the model shows the rendered rows, inserted rows may be anything.
+     */
+    private void assertRendered(ListModel model) {
+        assertRendered("", model);
+    }
+
+    private void assertRendered(String message, ListModel model) {
+        List<String> rendered = render(map);
+        assertEquals(message + " " + model.items, rendered.size(), model.items.size());
+        for (int i = 0; i < rendered.size(); i++) {
+            Object item = model.items.get(i);
+            if (item == ListModel.INSERTED) {
+                continue;
+            }
+            if (item instanceof Changed) {
+                item = ((Changed) item).item;
+            }
+            assertEquals(message + " " + model.items, rendered.get(i), item);
+        }
+    }
+
+    private List<String> render(SectionedRowMap map) {
+        List<String> rendered = new ArrayList<>();
+        for (int position = 0; position < map.size(); position++) {
+            String header = map.getHeader(position);
+            if (header != null) {
+                assertTrue(map.isHeader(position));
+                rendered.add((map.isSectionHeader(position) ? "H:" : "P:") + header);
+            } else {
+                int realmIndex = map.getRealmIndex(position);
+                assertEquals(position, map.getPosition(realmIndex));
+                rendered.add("R:" + rows.get(realmIndex).id);
+            }
+        }
+        return rendered;
+    }
+
+    private List<String> expectedRendering() {
+        List<String> rendered = new ArrayList<>();
+        TestRow previous = null;
+        for (TestRow row : rows) {
+            if (previous == null || !hasHeaders(previous, row)) {
+                if (nested && (previous == null || !previous.parent.equals(row.parent))) {
+                    rendered.add("P:" + row.parent);
+                }
+                rendered.add("H:" + row.header);
+            }
+            if (!collapsed.contains(collapsedKey(row))) {
+                rendered.add("R:" + row.id);
+            }
+            previous = row;
+        }
+        return rendered;
+    }
+
+    private boolean hasHeaders(TestRow row, TestRow other) {
+        return row.header.equals(other.header) && (!nested || row.parent.equals(other.parent));
+    }
+
+    private String collapsedKey(TestRow row) {
+        return row.header + "|" + (nested ? row.parent : null);
+    }
+
+    private void setNested() {
+        nested = true;
+        map.setNested(true);
+    }
+
+    private void addRows(String... headers) {
+        for (String header : headers) {
+            addRow(header, null);
+        }
+    }
+
+    private void addRow(String header, String parent) {
+        addRow(header, parent, 0);
+    }
+
+    private void addRow(String header, String parent, double value) {
+        rows.add(new TestRow(nextId++, header, parent, value));
+    }
+
+    private TestRow createRow(Random random) {
+        return new TestRow(nextId++,
+                HEADERS[random.nextInt(HEADERS.length)],
+                nested ? PARENTS[random.nextInt(PARENTS.length)] : null,
+                random.nextInt(10));
+    }
+
+    private static OrderedCollectionChangeSet changeSet(
+            int[] deletions, int[] insertions, int[] changes) {
+        return TestCollections.changeSet(deletions, insertions, changes);
+    }
+
+    private static final class TestRow {
+        final int id;
+        final String header;
+        final String parent;
+        final double value;
+
+        TestRow(int id, String header, String parent, double value) {
+            this.id = id;
+            this.header = header;
+            this.parent = parent;
+            this.value = value;
+        }
+    }
+
+    private static class RecordingCallback implements ListUpdateCallback {
+        private final List<String> notifications;
+
+        RecordingCallback(List<String> notifications) {
+            this.notifications = notifications;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifications.add("inserted " + position + "+" + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifications.add("removed " + position + "+" + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifications.add("moved " + fromPosition + ">" + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifications.add("changed " + position + "+" + count);
+        }
+    }
+}
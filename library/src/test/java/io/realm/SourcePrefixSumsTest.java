@@ -0,0 +1,57 @@
+package io.realm;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SourcePrefixSumsTest {
+
+    @Test
+    public void noSources_hasNoRows() {
+        SourcePrefixSums sums = new SourcePrefixSums(0);
+
+        assertEquals(0, sums.getSourceCount());
+        assertEquals(0, sums.total());
+    }
+
+    @Test
+    public void sourceAt_skipsEmptySources() {
+        SourcePrefixSums sums = new SourcePrefixSums(4);
+        sums.setSize(1, 2);
+        sums.setSize(3, 1);
+
+        assertEquals(1, sums.sourceAt(0));
+        assertEquals(1, sums.sourceAt(1));
+        assertEquals(3, sums.sourceAt(2));
+        assertEquals(2, sums.startOf(2));
+        assertEquals(2, sums.startOf(3));
+        assertEquals(3, sums.total());
+    }
+
+    @Test
+    public void setSize_randomSizes_matchTheSumsOfTheSizes() {
+        Random random = new Random(42);
+        for (int sourceCount = 1; sourceCount <= 33; sourceCount++) {
+            SourcePrefixSums sums = new SourcePrefixSums(sourceCount);
+            int[] sizes = new int[sourceCount];
+            for (int step = 0; step < 100; step++) {
+                int source = random.nextInt(sourceCount);
+                sizes[source] = random.nextInt(4) == 0 ? 0 : random.nextInt(10);
+                sums.setSize(source, sizes[source]);
+
+                int start = 0;
+                for (int i = 0; i < sourceCount; i++) {
+                    assertEquals(sizes[i], sums.size(i));
+                    assertEquals(start, sums.startOf(i));
+                    for (int position = start; position < start + sizes[i]; position++) {
+                        assertEquals(i, sums.sourceAt(position));
+                    }
+                    start += sizes[i];
+                }
+                assertEquals(start, sums.total());
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.realm;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Fake Realm collections and change sets backed by plain lists and arrays, for the tests of the
+ * helpers that don't need a Realm.
+ */
+final class TestCollections {
+
+    private TestCollections() {
+    }
+
+    /**
+     * @return a valid collection reading from the list, later changes of the list are visible.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> OrderedRealmCollection<T> collection(final List<T> rows) {
+        return (OrderedRealmCollection<T>) Proxy.newProxyInstance(
+                OrderedRealmCollection.class.getClassLoader(),
+                new Class<?>[] {OrderedRealmCollection.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        Class<?> declaringClass = method.getDeclaringClass();
+                        if (method.getName().equals("isValid")) {
+                            return Boolean.TRUE;
+                        } else if (declaringClass == Object.class) {
+                            return method.getName().equals("equals")
+                                    ? proxy == args[0] : method.invoke(rows, args);
+                        } else if (declaringClass.isAssignableFrom(List.class)) {
+                            try {
+                                return method.invoke(rows, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * @param deletions the sorted deleted indexes of the old collection.
+     * @param insertions the sorted inserted indexes of the new collection.
+     * @param changes the sorted changed indexes of the new collection.
+     */
+    static OrderedCollectionChangeSet changeSet(
+            final int[] deletions,
+            final int[] insertions,
+            final int[] changes) {
+        return (OrderedCollectionChangeSet) Proxy.newProxyInstance(
+                OrderedCollectionChangeSet.class.getClassLoader(),
+                new Class<?>[] {OrderedCollectionChangeSet.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getDeletions")) {
+                            return deletions;
+                        } else if (name.equals("getInsertions")) {
+                            return insertions;
+                        } else if (name.equals("getChanges")) {
+                            return changes;
+                        } else if (name.equals("getDeletionRanges")) {
+                            return toRanges(deletions);
+                        } else if (name.equals("getInsertionRanges")) {
+                            return toRanges(insertions);
+                        } else if (name.equals("getChangeRanges")) {
+                            return toRanges(changes);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    static int[] toArray(Collection<Integer> indexes) {
+        int[] array = new int[indexes.size()];
+        int i = 0;
+        for (int index : indexes) {
+            array[i++] = index;
+        }
+        return array;
+    }
+
+    private static OrderedCollectionChangeSet.Range[] toRanges(int[] indexes) {
+        List<OrderedCollectionChangeSet.Range> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < indexes.length) {
+            int length = 1;
+            while (i + length < indexes.length && indexes[i + length] == indexes[i] + length) {
+                length++;
+            }
+            ranges.add(new OrderedCollectionChangeSet.Range(indexes[i], length));
+            i += length;
+        }
+        return ranges.toArray(new OrderedCollectionChangeSet.Range[0]);
+    }
+
+    /**
+     * A list that follows the notifications of a {@link ListUpdateCallback}, the way a
+     * RecyclerView does. Inserted items are {@link #INSERTED} and changed items are wrapped in a
+     * {@link Changed} until they are replaced by the test.
+     */
+    static final class ListModel implements ListUpdateCallback {
+
+        static final Object INSERTED = "<inserted>";
+
+        final List<Object> items;
+
+        ListModel(List<?> items) {
+            this.items = new ArrayList<Object>(items);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            checkRange(position, 0, items.size());
+            for (int i = 0; i < count; i++) {
+                items.add(position, INSERTED);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            checkRange(position, count, items.size());
+            items.subList(position, position + count).clear();
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            checkRange(fromPosition, 1, items.size());
+            checkRange(toPosition, 1, items.size());
+            items.add(toPosition, items.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            checkRange(position, count, items.size());
+            for (int i = position; i < position + count; i++) {
+                if (items.get(i) != INSERTED && !(items.get(i) instanceof Changed)) {
+                    items.set(i, new Changed(items.get(i)));
+                }
+            }
+        }
+
+        private static void checkRange(int position, int count, int size) {
+            if (position < 0 || count < 0 || position + count > size) {
+                throw new IndexOutOfBoundsException(
+                        "Range " + position + "+" + count + " of " + size);
+            }
+        }
+    }
+
+    static final class Changed {
+        final Object item;
+
+        Changed(Object item) {
+            this.item = item;
+        }
+
+        @Override
+        public String toString() {
+            return "~" + item;
+        }
+    }
+}